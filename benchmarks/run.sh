@@ -0,0 +1,19 @@
+#!/bin/bash
+
+# Builds and runs the allocation engine benchmarks and stores the results
+# as results/<version>.json, so that consecutive versions can be compared.
+# The service itself has to be installed first (mvn install in the parent
+# directory). Additional arguments are passed to JMH, e.g. a benchmark
+# name pattern or -p live=1000.
+
+cd `dirname $0`
+
+VERSION=`mvn -q -Dexec.executable=echo -Dexec.args='${project.version}' --non-recursive exec:exec 2>/dev/null`
+if [ -z "$VERSION" ]; then
+  echo "Could not determine project version." 1>&2
+  exit 1
+fi
+
+mvn -q clean package || exit 1
+mkdir -p results
+java -jar target/benchmarks.jar -rf json -rff results/$VERSION.json "$@"
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import static de.citec.csra.rst.util.IntervalUtils.buildRelativeRst;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rsb.Factory;
+import rsb.config.ParticipantConfig;
+import rsb.config.TransportConfig;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.REQUESTED;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.SCHEDULED;
+
+/**
+ * Measures the conflict engine without any middleware in between: decisions
+ * are not published, the {@link NotificationService} is replaced by a stub.
+ * The allocation table is seeded with {@code live} scheduled allocations
+ * spread over a resource tree of the given {@code depth}. Benchmarks that
+ * modify the table measure single invocations, the table is rebuilt from
+ * the seeds before each of them.
+ *
+ * Run with {@code benchmarks/run.sh} to keep the results of each version in
+ * {@code benchmarks/results/}.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationsBenchmark {
+
+	public enum Mix {
+		SAME, MIXED
+	}
+
+	private final static int FANOUT = 4;
+	private final static int PROBES = 64;
+	private final static Priority[] PRIORITIES = new Priority[]{LOW, NORMAL, HIGH, URGENT};
+
+	@Param({"100", "1000"})
+	public int live;
+
+	@Param({"1", "3"})
+	public int depth;
+
+	@Param({"SAME", "MIXED"})
+	public Mix priorities;
+
+	@Param({"PRESERVE", "FIRST", "MAXIMUM"})
+	public Policy policy;
+
+	private Allocations allocations;
+	private final List<ResourceAllocation> seeded = new ArrayList<>();
+	private final List<ResourceAllocation> probes = new ArrayList<>();
+	private int next;
+	private long requests;
+	private boolean dirty;
+
+	@Setup(Level.Trial)
+	public void seed() {
+		ParticipantConfig cfg = Factory.getInstance().getDefaultParticipantConfig();
+		for (TransportConfig t : cfg.getTransports().values()) {
+			t.setEnabled(t.getName().equalsIgnoreCase("INPROCESS"));
+		}
+		Factory.getInstance().setDefaultParticipantConfig(cfg);
+		Logger.getLogger("de.citec.csra.allocation").setLevel(java.util.logging.Level.OFF);
+
+		this.allocations = Allocations.getInstance();
+		this.allocations.setNotifications(new NotificationService(null) {
+			@Override
+			public void init(String id) {
+			}
+
+			@Override
+			public void inform(String id) {
+			}
+
+			@Override
+			public void announce(String id) {
+			}
+
+			@Override
+			public void update(String id, boolean publish) {
+			}
+		});
+		Random random = new Random(42);
+		long horizon = this.live * 100L;
+
+		for (int i = 0; i < this.live; i++) {
+			Priority priority = this.priorities == Mix.SAME ? NORMAL : PRIORITIES[random.nextInt(PRIORITIES.length)];
+			ResourceAllocation a = build("seed-" + i, SCHEDULED, Policy.MAXIMUM, priority,
+					600000 + (long) (random.nextDouble() * horizon), 200 + random.nextInt(1800),
+					resource(random, 1 + random.nextInt(this.depth)));
+			this.seeded.add(a);
+		}
+		this.dirty = true;
+		restore();
+
+		for (int i = 0; i < PROBES; i++) {
+			this.probes.add(build("probe-" + i, REQUESTED, this.policy, NORMAL,
+					600000 + (long) (random.nextDouble() * horizon), 200 + random.nextInt(1800),
+					resource(random, this.depth)));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void restore() {
+		if (!this.dirty) {
+			return;
+		}
+		this.allocations.clear();
+		for (ResourceAllocation a : this.seeded) {
+			this.allocations.store(a);
+		}
+		this.dirty = false;
+	}
+
+	@TearDown(Level.Trial)
+	public void clear() {
+		this.allocations.clear();
+		this.seeded.clear();
+		this.probes.clear();
+	}
+
+	private ResourceAllocation probe() {
+		this.next = (this.next + 1) % PROBES;
+		return this.probes.get(this.next);
+	}
+
+	private String resource(Random random, int level) {
+		StringBuilder path = new StringBuilder("/bench/");
+		for (int i = 0; i < level; i++) {
+			path.append(random.nextInt(FANOUT)).append('/');
+		}
+		return path.toString();
+	}
+
+	private ResourceAllocation build(String id, ResourceAllocation.State state, Policy policy, Priority priority, long start, long duration, String resource) {
+		return ResourceAllocation.newBuilder().
+				setId(id).setState(state).setDescription(id).setPolicy(policy).
+				setPriority(priority).setInitiator(SYSTEM).setSlot(buildRelativeRst(start, duration, MILLISECONDS)).
+				addResourceIds(resource).build();
+	}
+
+	@Benchmark
+	public void getBlockers(Blackhole bh) {
+		bh.consume(this.allocations.getBlockers(probe(), false));
+	}
+
+	@Benchmark
+	public void findSlot(Blackhole bh) {
+		bh.consume(this.allocations.findSlot(probe(), false));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 200)
+	@Measurement(iterations = 1000)
+	public void updateAffected() {
+		ResourceAllocation trigger = ResourceAllocation.newBuilder(probe()).setPriority(EMERGENCY).build();
+		this.dirty = true;
+		this.allocations.updateAffected(trigger, "benchmark");
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 200)
+	@Measurement(iterations = 1000)
+	public boolean handle() {
+		this.dirty = true;
+		String id = "request-" + this.requests++;
+		return this.allocations.handle(ResourceAllocation.newBuilder(probe()).setId(id).build());
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import static de.citec.csra.rst.util.IntervalUtils.buildRelativeRst;
+import static de.citec.csra.rst.util.IntervalUtils.currentTimeInMicros;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import rsb.Factory;
+import rsb.Informer;
+import rsb.RSBException;
+import rsb.config.ParticipantConfig;
+import rsb.config.TransportConfig;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.MAXIMUM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.NORMAL;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.ALLOCATED;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.SCHEDULED;
+
+/**
+ * Measures how the notification machinery scales with the number of
+ * outstanding scheduled allocations. For every count, that many allocations
+ * are scheduled to begin within a short window and driven by the given
+ * {@link NotificationTimer}. Reported are the additional threads, heap and
+ * resident memory while all of them are outstanding, the lateness of the
+ * ALLOCATED transitions and the publish throughput.
+ *
+ * Usage: {@code java -cp target/benchmarks.jar
+ * de.citec.csra.allocation.srv.NotifierBenchmark [thread|shared|<timer class>
+ * [COUNT ...]]}
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class NotifierBenchmark {
+
+	private final static long LEAD = 10000;
+	private final static long SPREAD = 5000;
+	private final static long DURATION = 100;
+
+	private static NotificationTimer timer(String name) throws ReflectiveOperationException {
+		switch (name) {
+			case "thread":
+				return new ThreadedTimer();
+			case "shared":
+				return new SharedTimer();
+			default:
+				return (NotificationTimer) Class.forName(name).getDeclaredConstructor().newInstance();
+		}
+	}
+
+	private static long rss() {
+		try {
+			for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+				}
+			}
+		} catch (IOException | NumberFormatException ex) {
+//			not available on this platform
+		}
+		return -1;
+	}
+
+	private static long heap() {
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024);
+	}
+
+	private static int threads() {
+		return ManagementFactory.getThreadMXBean().getThreadCount();
+	}
+
+	private static void run(String name, int count) throws ReflectiveOperationException, RSBException, InterruptedException {
+		NotificationTimer timer = timer(name);
+		Informer informer = Factory.getInstance().createInformer("/benchmark/notifier/");
+		informer.activate();
+
+		Histogram lateness = new Histogram();
+		AtomicLong published = new AtomicLong();
+		AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+		AtomicLong last = new AtomicLong();
+		AllocationListener listener = (allocation) -> {
+			long now = System.nanoTime();
+			published.incrementAndGet();
+			first.accumulateAndGet(now, Math::min);
+			last.accumulateAndGet(now, Math::max);
+			if (allocation.getState().equals(ALLOCATED)) {
+				lateness.record(currentTimeInMicros() - allocation.getSlot().getBegin().getTime());
+			}
+		};
+		NotificationService.getInstance().addListener(listener);
+		Metrics.getInstance().publish.reset();
+
+		int threadsBefore = threads();
+		long heapBefore = heap();
+		long rssBefore = rss();
+		Random random = new Random(42);
+		List<String> ids = new ArrayList<>(count);
+		long start = System.nanoTime();
+		int started = 0;
+		try {
+			for (; started < count; started++) {
+				String id = "notifier-" + name + "-" + count + "-" + started;
+				ids.add(id);
+				Allocations.getInstance().store(ResourceAllocation.newBuilder().
+						setId(id).setState(SCHEDULED).setDescription(id).setPolicy(MAXIMUM).
+						setPriority(NORMAL).setInitiator(SYSTEM).
+						setSlot(buildRelativeRst(LEAD + random.nextInt((int) SPREAD), DURATION, MILLISECONDS)).
+						addResourceIds("/benchmark/" + started).build());
+				timer.start(new RemoteNotifier(informer, id, timer));
+			}
+		} catch (OutOfMemoryError ex) {
+			System.err.println("Giving up after " + started + " notifiers: " + ex);
+		}
+		long startup = (System.nanoTime() - start) / 1000000;
+		int threadsDelta = threads() - threadsBefore;
+		long heapDelta = heap() - heapBefore;
+		long rssDelta = rss() - rssBefore;
+
+		long deadline = System.currentTimeMillis() + LEAD + SPREAD + DURATION + 60000;
+		while (timer.size() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(100);
+		}
+
+		double window = Math.max(1, last.get() - first.get()) / 1e9;
+		System.out.println(String.format("%-8s %8d %8d %8d %8d %8d %8d %10d %10d %10d %10d %10.0f %10d",
+				name, count, started, startup, threadsDelta, heapDelta, rssDelta,
+				lateness.getValueAtPercentile(50), lateness.getValueAtPercentile(99),
+				lateness.getValueAtPercentile(99.9), lateness.getMax(),
+				published.get() / window, Metrics.getInstance().publish.getValueAtPercentile(99)));
+
+		NotificationService.getInstance().removeListener(listener);
+		for (String id : ids) {
+			Allocations.getInstance().remove(id);
+		}
+		informer.deactivate();
+	}
+
+	public static void main(String[] args) throws Exception {
+		ParticipantConfig cfg = Factory.getInstance().getDefaultParticipantConfig();
+		for (TransportConfig t : cfg.getTransports().values()) {
+			t.setEnabled(t.getName().equalsIgnoreCase("INPROCESS"));
+		}
+		Factory.getInstance().setDefaultParticipantConfig(cfg);
+		Logger.getLogger("de.citec.csra.allocation").setLevel(java.util.logging.Level.OFF);
+
+		String name = args.length > 0 ? args[0] : "thread";
+		List<Integer> counts = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			counts.add(Integer.parseInt(args[i]));
+		}
+		if (counts.isEmpty()) {
+			counts.add(1000);
+			counts.add(10000);
+			counts.add(100000);
+		}
+
+		System.out.println(String.format("%-8s %8s %8s %8s %8s %8s %8s %10s %10s %10s %10s %10s %10s",
+				"timer", "count", "started", "start_ms", "threads", "heap_mb", "rss_mb",
+				"late_p50", "late_p99", "late_p999", "late_max", "publish/s", "pub_p99"));
+		for (int count : counts) {
+			run(name, count);
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,139 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drives all notifiers from a small, shared pool of scheduler threads. The
+ * number of threads is read from {@code ALLOCATION_TIMER_THREADS} and
+ * defaults to the number of available processors.
+ *
+ * Wake-ups and timeouts only mark a notifier as due, a notifier is stepped by
+ * at most one thread at a time. No lock is held while stepping, because
+ * notifiers acquire the allocation table lock under which they are woken up.
+ *
+ * The timer is a candidate for replacing the {@link ThreadedTimer} and is
+ * only used by the {@link NotifierBenchmark} until it has been tested against
+ * the allocation server.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class SharedTimer implements NotificationTimer {
+
+	private final static Logger LOG = Logger.getLogger(SharedTimer.class.getName());
+	private final static String THREADSVAR = "ALLOCATION_TIMER_THREADS";
+
+	private class Task implements Runnable {
+
+		private final RemoteNotifier notifier;
+		private final AtomicInteger due = new AtomicInteger();
+		private volatile ScheduledFuture timeout;
+
+		Task(RemoteNotifier notifier) {
+			this.notifier = notifier;
+		}
+
+		void trigger() {
+			if (this.due.getAndIncrement() == 0) {
+				exec.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			int seen;
+			long wait;
+			do {
+				seen = this.due.get();
+				try {
+					wait = this.notifier.step();
+				} catch (RuntimeException ex) {
+					LOG.log(Level.SEVERE, "Notifier for ''" + this.notifier.getId() + "'' failed", ex);
+					wait = -1;
+				}
+				if (wait < 0) {
+					tasks.remove(this.notifier, this);
+					cancel();
+					return;
+				}
+			} while (this.due.addAndGet(-seen) != 0);
+			cancel();
+			this.timeout = exec.schedule(this::trigger, wait, MICROSECONDS);
+		}
+
+		void cancel() {
+			ScheduledFuture f = this.timeout;
+			if (f != null) {
+				f.cancel(false);
+			}
+		}
+	}
+
+	private final ScheduledThreadPoolExecutor exec;
+	private final Map<RemoteNotifier, Task> tasks = new ConcurrentHashMap<>();
+
+	public SharedTimer() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (System.getenv().containsKey(THREADSVAR)) {
+			threads = Integer.parseInt(System.getenv(THREADSVAR));
+		}
+		this.exec = new ScheduledThreadPoolExecutor(threads, (r) -> {
+			Thread t = new Thread(r, "allocation-timer");
+			t.setDaemon(true);
+			return t;
+		});
+		this.exec.setRemoveOnCancelPolicy(true);
+	}
+
+	@Override
+	public void start(RemoteNotifier notifier) {
+		Task t = new Task(notifier);
+		this.tasks.put(notifier, t);
+		t.trigger();
+	}
+
+	@Override
+	public void wake(RemoteNotifier notifier) {
+		Task t = this.tasks.get(notifier);
+		if (t != null) {
+			t.trigger();
+		}
+	}
+
+	@Override
+	public void stop(RemoteNotifier notifier) {
+		notifier.cancel();
+		Task t = this.tasks.remove(notifier);
+		if (t != null) {
+			t.cancel();
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.tasks.size();
+	}
+}
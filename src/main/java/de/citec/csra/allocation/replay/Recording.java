@@ -0,0 +1,175 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+
+/**
+ * Binary recording of the traffic on the allocation scope. A recording
+ * starts with a header holding the participant id of the allocation server,
+ * if known, followed by one record per event: the receive time in
+ * microseconds, the sender and the serialized allocation. Senders are stored
+ * as indices into a table that is built up along the records, so every
+ * participant id is written only once.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class Recording {
+
+	private final static int MAGIC = 0x41525243;
+	private final static short VERSION = 1;
+
+	public static class Entry {
+
+		private final long time;
+		private final String sender;
+		private final byte[] data;
+
+		public Entry(long time, String sender, byte[] data) {
+			this.time = time;
+			this.sender = sender;
+			this.data = data;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public String getSender() {
+			return sender;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+
+		public ResourceAllocation getAllocation() throws IOException {
+			return ResourceAllocation.parseFrom(data);
+		}
+	}
+
+	public static class Writer implements Closeable {
+
+		private final DataOutputStream out;
+		private final Map<String, Integer> senders = new HashMap<>();
+
+		public Writer(File file, String server) throws IOException {
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			this.out.writeInt(MAGIC);
+			this.out.writeShort(VERSION);
+			this.out.writeUTF(server != null ? server : "");
+		}
+
+		public synchronized void write(long time, String sender, byte[] data) throws IOException {
+			this.out.writeLong(time);
+			Integer index = this.senders.get(sender);
+			if (index == null) {
+				index = this.senders.size();
+				this.senders.put(sender, index);
+				this.out.writeInt(index);
+				this.out.writeUTF(sender);
+			} else {
+				this.out.writeInt(index);
+			}
+			this.out.writeInt(data.length);
+			this.out.write(data);
+		}
+
+		public synchronized void flush() throws IOException {
+			this.out.flush();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			this.out.close();
+		}
+	}
+
+	public static class Reader implements Closeable {
+
+		private final DataInputStream in;
+		private final List<String> senders = new ArrayList<>();
+		private final String server;
+
+		public Reader(File file) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (this.in.readInt() != MAGIC) {
+				this.in.close();
+				throw new IOException("Not an allocation recording: " + file);
+			}
+			short version = this.in.readShort();
+			if (version != VERSION) {
+				this.in.close();
+				throw new IOException("Unsupported recording version " + version + ": " + file);
+			}
+			String id = this.in.readUTF();
+			this.server = id.isEmpty() ? null : id;
+		}
+
+		/**
+		 * @return the participant id of the allocation server as known while
+		 * recording, or {@code null}
+		 */
+		public String getServer() {
+			return server;
+		}
+
+		/**
+		 * Reads the next entry.
+		 *
+		 * @return the next entry or {@code null} at the end of the recording
+		 * @throws IOException if the recording is corrupt
+		 */
+		public Entry next() throws IOException {
+			long time;
+			try {
+				time = this.in.readLong();
+			} catch (EOFException ex) {
+				return null;
+			}
+			int index = this.in.readInt();
+			if (index == this.senders.size()) {
+				this.senders.add(this.in.readUTF());
+			} else if (index < 0 || index > this.senders.size()) {
+				throw new IOException("Corrupt recording, unknown sender " + index);
+			}
+			byte[] data = new byte[this.in.readInt()];
+			this.in.readFully(data);
+			return new Entry(time, this.senders.get(index), data);
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+	}
+}
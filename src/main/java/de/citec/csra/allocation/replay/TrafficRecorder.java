@@ -0,0 +1,133 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.replay;
+
+import de.citec.csra.allocation.srv.AllocationServer;
+import de.citec.csra.allocation.srv.QueryServer;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rsb.EventId;
+import rsb.Factory;
+import rsb.Listener;
+import rsb.RSBException;
+import rsb.patterns.RemoteServer;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+
+/**
+ * Records all allocation events on the allocation scope into a
+ * {@link Recording} until the process is terminated. An event that is
+ * delivered more than once, e.g. via several transports, is recorded once,
+ * events are told apart by their sender and sequence number. Repeated
+ * events with identical content are recorded as they were published.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class TrafficRecorder {
+
+	private final static Logger LOG = Logger.getLogger(TrafficRecorder.class.getName());
+	private final static int RECENT = 4096;
+
+	private final Recording.Writer writer;
+	private final AtomicLong recorded = new AtomicLong();
+	private final Set<String> recent = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(RECENT, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > RECENT;
+		}
+	});
+
+	public TrafficRecorder(File file) throws IOException {
+		this.writer = new Recording.Writer(file, queryServer());
+	}
+
+	private static String queryServer() {
+		try {
+			RemoteServer query = Factory.getInstance().createRemoteServer(QueryServer.getScope());
+			try {
+				query.activate();
+				return query.call("server", "", 5);
+			} finally {
+				query.deactivate();
+			}
+		} catch (RSBException | ExecutionException | TimeoutException | InterruptedException ex) {
+			LOG.log(Level.WARNING, "Could not determine server id, replay will guess it: {0}", ex.getMessage());
+			return null;
+		}
+	}
+
+	private void record(long time, EventId event, ResourceAllocation allocation) {
+		String sender = event.getParticipantId().toString();
+		synchronized (this.recent) {
+			if (!this.recent.add(sender + "/" + event.getSequenceNumber())) {
+				return;
+			}
+		}
+		try {
+			this.writer.write(time, sender, allocation.toByteArray());
+			this.recorded.incrementAndGet();
+		} catch (IOException ex) {
+			LOG.log(Level.SEVERE, "Could not record event", ex);
+		}
+	}
+
+	public void run() throws RSBException, InterruptedException {
+		Listener listener = Factory.getInstance().createListener(AllocationServer.getScope());
+		listener.addHandler((event) -> {
+			if (event.getData() instanceof ResourceAllocation) {
+				record(event.getMetaData().getReceiveTime(), event.getId(), (ResourceAllocation) event.getData());
+			}
+		}, true);
+		listener.activate();
+		LOG.log(Level.INFO, "Recording allocation events at ''{0}''.", listener.getScope());
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				this.writer.close();
+				LOG.log(Level.INFO, "Recorded {0} events.", this.recorded.get());
+			} catch (IOException ex) {
+				LOG.log(Level.SEVERE, "Could not close recording", ex);
+			}
+		}));
+
+		while (listener.isActive()) {
+			Thread.sleep(1000);
+			try {
+				this.writer.flush();
+			} catch (IOException ex) {
+				LOG.log(Level.SEVERE, "Could not flush recording", ex);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException, RSBException, InterruptedException {
+		if (args.length != 1) {
+			System.err.println("usage: csra-allocation-recorder FILE");
+			System.exit(1);
+		}
+		new TrafficRecorder(new File(args[0])).run();
+	}
+}
@@ -0,0 +1,208 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.replay;
+
+import de.citec.csra.allocation.srv.AllocationServer;
+import de.citec.csra.allocation.srv.Metrics;
+import static de.citec.csra.rst.util.IntervalUtils.currentTimeInMicros;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rsb.Factory;
+import rsb.Informer;
+import rsb.RSBException;
+import rsb.config.ParticipantConfig;
+import rsb.config.TransportConfig;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
+
+/**
+ * Replays the client side of a {@link Recording} to an allocation server.
+ * Events are sent with their original spacing divided by the given speed, or
+ * as fast as possible. All times in the replayed allocations are moved to the
+ * time of replay, relative times are scaled by the speed as well so that the
+ * load profile is preserved.
+ *
+ * The events of the allocation server itself are skipped. Its participant id
+ * is taken from the recording or, for recordings without it, guessed as the
+ * participant that most often answers requests issued by other participants.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class TrafficReplayer {
+
+	private final static Logger LOG = Logger.getLogger(TrafficReplayer.class.getName());
+	private final static String USAGE = "usage: csra-allocation-replayer FILE [SPEED|asap [inprocess]]";
+
+	private final File file;
+	private final double speed;
+
+	/**
+	 * @param file the recording
+	 * @param speed the replay speed, or a value of zero or less to replay as
+	 * fast as possible
+	 */
+	public TrafficReplayer(File file, double speed) {
+		this.file = file;
+		this.speed = speed;
+	}
+
+	static String guessServer(File file) throws IOException {
+		Map<String, String> requesters = new HashMap<>();
+		Map<String, Integer> answers = new HashMap<>();
+		Map<String, Integer> events = new HashMap<>();
+		try (Recording.Reader reader = new Recording.Reader(file)) {
+			if (reader.getServer() != null) {
+				return reader.getServer();
+			}
+			Recording.Entry e;
+			while ((e = reader.next()) != null) {
+				ResourceAllocation a = e.getAllocation();
+				events.merge(e.getSender(), 1, Integer::sum);
+				if (a.getState().equals(State.REQUESTED)) {
+					requesters.putIfAbsent(a.getId(), e.getSender());
+				} else if (a.getState().equals(State.SCHEDULED) || a.getState().equals(State.REJECTED)) {
+					String requester = requesters.remove(a.getId());
+					if (requester != null && !requester.equals(e.getSender())) {
+						answers.merge(e.getSender(), 1, Integer::sum);
+					}
+				}
+			}
+		}
+		Map<String, Integer> votes = answers.isEmpty() ? events : answers;
+		String server = null;
+		for (Map.Entry<String, Integer> v : votes.entrySet()) {
+			if (server == null || v.getValue() > votes.get(server)) {
+				server = v.getKey();
+			}
+		}
+		return server;
+	}
+
+	private Interval shift(Interval interval, long recorded, long now, double scale) {
+		return Interval.newBuilder(interval).
+				setBegin(Timestamp.newBuilder().setTime(now + (long) ((interval.getBegin().getTime() - recorded) / scale))).
+				setEnd(Timestamp.newBuilder().setTime(now + (long) ((interval.getEnd().getTime() - recorded) / scale))).
+				build();
+	}
+
+	private ResourceAllocation shift(ResourceAllocation allocation, long recorded, long now, double scale) {
+		ResourceAllocation.Builder builder = ResourceAllocation.newBuilder(allocation);
+		builder.setSlot(shift(allocation.getSlot(), recorded, now, scale));
+		if (allocation.hasConstraints()) {
+			builder.setConstraints(shift(allocation.getConstraints(), recorded, now, scale));
+		}
+		return builder.build();
+	}
+
+	public void run() throws IOException, RSBException, InterruptedException {
+		String server = guessServer(this.file);
+		LOG.log(Level.INFO, "Skipping events of server ''{0}''.", server);
+
+		Informer<Object> informer = Factory.getInstance().createInformer(AllocationServer.getScope());
+		informer.activate();
+
+		double scale = this.speed > 0 ? this.speed : 1;
+		long sent = 0;
+		long behind = 0;
+		long first = -1;
+		long start = currentTimeInMicros();
+		try (Recording.Reader reader = new Recording.Reader(this.file)) {
+			Recording.Entry e;
+			while ((e = reader.next()) != null) {
+				if (e.getSender().equals(server)) {
+					continue;
+				}
+				if (first < 0) {
+					first = e.getTime();
+				}
+				long now = currentTimeInMicros();
+				if (this.speed > 0) {
+					long due = start + (long) ((e.getTime() - first) / this.speed);
+					if (due > now) {
+						LockSupport.parkNanos((due - now) * 1000);
+						now = currentTimeInMicros();
+					}
+					behind = Math.max(behind, now - due);
+				}
+				informer.publish(shift(e.getAllocation(), e.getTime(), now, scale));
+				sent++;
+			}
+		} finally {
+			informer.deactivate();
+		}
+
+		double elapsed = (currentTimeInMicros() - start) / 1e6;
+		LOG.log(Level.INFO, "Replayed {0} events in {1} s ({2} events/s), at most {3} us behind schedule.",
+				new Object[]{sent, String.format("%.3f", elapsed), String.format("%.1f", sent / elapsed), behind});
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		double speed = 1;
+		if (args.length > 1) {
+			if (args[1].equalsIgnoreCase("asap")) {
+				speed = 0;
+			} else {
+				try {
+					speed = Double.parseDouble(args[1]);
+				} catch (NumberFormatException ex) {
+					System.err.println("Could not read SPEED.\n" + USAGE);
+					System.exit(1);
+				}
+			}
+		}
+		boolean inprocess = args.length > 2 && args[2].equalsIgnoreCase("inprocess");
+
+		if (inprocess) {
+			ParticipantConfig cfg = Factory.getInstance().getDefaultParticipantConfig();
+			for (TransportConfig t : cfg.getTransports().values()) {
+				t.setEnabled(t.getName().equalsIgnoreCase("INPROCESS"));
+			}
+			Factory.getInstance().setDefaultParticipantConfig(cfg);
+			AllocationServer a = AllocationServer.getInstance();
+			a.activate();
+			Thread t = new Thread(() -> {
+				try {
+					a.listen();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			t.setDaemon(true);
+			t.start();
+		}
+
+		new TrafficReplayer(new File(args[0]), speed).run();
+
+		if (inprocess) {
+			Thread.sleep(1000);
+			System.out.println(Metrics.getInstance().render());
+		}
+		System.exit(0);
+	}
+}
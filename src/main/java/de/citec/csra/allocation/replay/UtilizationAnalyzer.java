@@ -0,0 +1,320 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.replay;
+
+import de.citec.csra.allocation.srv.Histogram;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import rst.timing.IntervalType.Interval;
+
+/**
+ * Computes per-resource utilization statistics from one or more
+ * {@link Recording}s in a single pass. Memory is bounded by the number of
+ * resources and the number of simultaneously open allocations, which is
+ * capped at {@code ALLOCATION_ANALYZER_OPEN} (100000), so that recordings
+ * of arbitrary length can be analyzed.
+ *
+ * For every resource, the following is reported:
+ * <ul>
+ * <li>held time, i.e. from ALLOCATED until the allocation ended, and its
+ * share of the recorded time span</li>
+ * <li>the share of the held time of allocations that ran until their slot
+ * expired instead of being released by the client</li>
+ * <li>preemptions, i.e. slots shortened or allocations terminated by the
+ * server on behalf of others, and the reserved time lost by them</li>
+ * <li>cancellations and rejections</li>
+ * <li>wait time from the requested begin to the actual allocation</li>
+ * <li>fragmentation as the share of idle time in gaps shorter than the mean
+ * held time</li>
+ * </ul>
+ * Allocations holding a resource concurrently, e.g. with permitted tokens,
+ * are counted individually, so utilization may exceed 100%.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class UtilizationAnalyzer {
+
+	private final static String OPENVAR = "ALLOCATION_ANALYZER_OPEN";
+
+	private static class Open {
+
+		final List<String> resources;
+		long requestedBegin = -1;
+		long allocated = -1;
+		long duration = -1;
+		boolean clientTerminated;
+
+		Open(List<String> resources) {
+			this.resources = resources;
+		}
+	}
+
+	private static class Usage {
+
+		long allocations;
+		long held;
+		long expired;
+		long preemptions;
+		long preempted;
+		long cancelled;
+		long rejected;
+		long lastEnd = -1;
+		long idle;
+		long fragmented;
+		final Histogram wait = new Histogram();
+	}
+
+	private final int capacity;
+	private final Map<String, Open> open;
+	private final Map<String, Usage> usage = new TreeMap<>();
+	private long first = -1;
+	private long last = -1;
+	private long events;
+	private long untracked;
+
+	public UtilizationAnalyzer() {
+		this.capacity = System.getenv().containsKey(OPENVAR) ? Integer.parseInt(System.getenv(OPENVAR)) : 100000;
+		this.open = new LinkedHashMap<String, Open>() {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Open> eldest) {
+				if (size() > capacity) {
+					untracked++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	private static long duration(Interval slot) {
+		return slot.getEnd().getTime() - slot.getBegin().getTime();
+	}
+
+	private Usage usage(String resource) {
+		return this.usage.computeIfAbsent(resource, r -> new Usage());
+	}
+
+	/**
+	 * Adds a recording to the analysis. The allocation server is taken from
+	 * the header of the recording or, if it is not known there, identified by
+	 * its first answer to a request of another participant. Events are
+	 * buffered until then.
+	 *
+	 * @param file the recording
+	 * @throws IOException if the recording is corrupt or the server does not
+	 * answer within the first {@code ALLOCATION_ANALYZER_OPEN} events
+	 */
+	public void analyze(File file) throws IOException {
+		try (Recording.Reader reader = new Recording.Reader(file)) {
+			String server = reader.getServer();
+			List<Recording.Entry> buffered = new ArrayList<>();
+			Map<String, String> requesters = new HashMap<>();
+			Recording.Entry e;
+			while ((e = reader.next()) != null) {
+				if (server != null) {
+					process(e, server);
+					continue;
+				}
+				buffered.add(e);
+				server = answer(e, requesters);
+				if (server != null) {
+					for (Recording.Entry b : buffered) {
+						process(b, server);
+					}
+					buffered.clear();
+					requesters.clear();
+				} else if (buffered.size() > this.capacity) {
+					throw new IOException("No answer of the allocation server within the first "
+							+ this.capacity + " events, record with a known server: " + file);
+				}
+			}
+			for (Recording.Entry b : buffered) {
+				process(b, null);
+			}
+		}
+	}
+
+	private static String answer(Recording.Entry e, Map<String, String> requesters) throws IOException {
+		ResourceAllocation a = e.getAllocation();
+		switch (a.getState()) {
+			case REQUESTED:
+				requesters.putIfAbsent(a.getId(), e.getSender());
+				return null;
+			case SCHEDULED:
+			case REJECTED:
+				String requester = requesters.get(a.getId());
+				return requester != null && !requester.equals(e.getSender()) ? e.getSender() : null;
+			default:
+				return null;
+		}
+	}
+
+	private void process(Recording.Entry e, String server) throws IOException {
+		if (this.first < 0) {
+			this.first = e.getTime();
+		}
+		this.last = e.getTime();
+		this.events++;
+		if (e.getSender().equals(server)) {
+			server(e.getTime(), e.getAllocation());
+		} else {
+			client(e.getAllocation());
+		}
+	}
+
+	private void client(ResourceAllocation a) {
+		Open o = this.open.get(a.getId());
+		switch (a.getState()) {
+			case REQUESTED:
+				if (o == null) {
+					o = new Open(new ArrayList<>(a.getResourceIdsList()));
+					o.requestedBegin = a.getSlot().getBegin().getTime();
+					this.open.put(a.getId(), o);
+				}
+				break;
+			case SCHEDULED:
+			case ALLOCATED:
+				if (o != null) {
+					o.duration = -1;
+				}
+				break;
+			case CANCELLED:
+			case ABORTED:
+			case RELEASED:
+				if (o != null) {
+					o.clientTerminated = true;
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void server(long time, ResourceAllocation a) {
+		Open o = this.open.get(a.getId());
+		if (o == null) {
+			if (a.getResourceIdsCount() == 0) {
+				return;
+			}
+			o = new Open(new ArrayList<>(a.getResourceIdsList()));
+			this.open.put(a.getId(), o);
+		}
+		long duration = duration(a.getSlot());
+		switch (a.getState()) {
+			case SCHEDULED:
+			case ALLOCATED:
+				if (o.duration >= 0 && duration < o.duration && !o.clientTerminated) {
+					for (String r : o.resources) {
+						Usage u = usage(r);
+						u.preemptions++;
+						u.preempted += o.duration - duration;
+					}
+				}
+				o.duration = duration;
+				if (a.getState().equals(State.ALLOCATED) && o.allocated < 0) {
+					o.allocated = time;
+					for (String r : o.resources) {
+						Usage u = usage(r);
+						u.allocations++;
+						if (o.requestedBegin >= 0) {
+							u.wait.record(time - o.requestedBegin);
+						}
+						if (u.lastEnd >= 0 && time > u.lastEnd) {
+							long gap = time - u.lastEnd;
+							u.idle += gap;
+							if (u.allocations > 1 && gap < u.held / (u.allocations - 1)) {
+								u.fragmented += gap;
+							}
+						}
+					}
+				}
+				break;
+			case REJECTED:
+				for (String r : o.resources) {
+					usage(r).rejected++;
+				}
+				this.open.remove(a.getId());
+				break;
+			case CANCELLED:
+			case ABORTED:
+			case RELEASED:
+				for (String r : o.resources) {
+					Usage u = usage(r);
+					if (o.allocated >= 0) {
+						u.held += time - o.allocated;
+						u.lastEnd = Math.max(u.lastEnd, time);
+						if (a.getState().equals(State.RELEASED) && !o.clientTerminated) {
+							u.expired += time - o.allocated;
+						}
+					} else if (a.getState().equals(State.CANCELLED)) {
+						u.cancelled++;
+					}
+					if (!o.clientTerminated && !a.getState().equals(State.RELEASED)) {
+						u.preemptions++;
+						u.preempted += Math.max(0, o.duration - (o.allocated >= 0 ? time - o.allocated : 0));
+					}
+				}
+				this.open.remove(a.getId());
+				break;
+			default:
+				break;
+		}
+	}
+
+	private static double percent(long part, long whole) {
+		return whole > 0 ? 100.0 * part / whole : 0;
+	}
+
+	public void report(PrintStream out) {
+		long span = Math.max(1, this.last - this.first);
+		out.println(String.format("%d events over %.1f h, %d allocations still open, %d untracked",
+				this.events, span / 3.6e9, this.open.size(), this.untracked));
+		out.println(String.format("%-32s %8s %10s %7s %8s %8s %10s %8s %8s %10s %10s %7s",
+				"resource", "allocs", "held_s", "util%", "expired%", "preempt", "lost_s",
+				"cancel", "reject", "wait_p50ms", "wait_p99ms", "frag%"));
+		for (Map.Entry<String, Usage> entry : this.usage.entrySet()) {
+			Usage u = entry.getValue();
+			out.println(String.format("%-32s %8d %10.1f %7.2f %8.2f %8d %10.1f %8d %8d %10.1f %10.1f %7.2f",
+					entry.getKey(), u.allocations, u.held / 1e6, percent(u.held, span), percent(u.expired, u.held),
+					u.preemptions, u.preempted / 1e6, u.cancelled, u.rejected,
+					u.wait.getValueAtPercentile(50) / 1e3, u.wait.getValueAtPercentile(99) / 1e3,
+					percent(u.fragmented, u.idle)));
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: csra-allocation-analyzer FILE [FILE ...]");
+			System.exit(1);
+		}
+		UtilizationAnalyzer analyzer = new UtilizationAnalyzer();
+		for (String file : args) {
+			analyzer.analyze(new File(file));
+		}
+		analyzer.report(System.out);
+	}
+}
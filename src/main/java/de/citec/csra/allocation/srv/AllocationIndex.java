@@ -0,0 +1,256 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+
+/**
+ * Secondary indexes over the live allocations by resource id, token, state,
+ * slot begin and slot length, and the set of allocations in shared mode.
+ *
+ * The index is updated by {@link Allocations} whenever an allocation is
+ * stored or removed. Queries do not take the allocation lock: ids are looked
+ * up in the concurrent indexes and resolved against the concurrent
+ * allocation map, and every result is checked against the query again so
+ * that concurrent modifications never yield wrong matches.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+class AllocationIndex {
+
+	private final Map<String, ResourceAllocation> allocations;
+	private final NavigableMap<String, Set<String>> resources = new ConcurrentSkipListMap<>();
+	private final NavigableMap<Long, Set<String>> begins = new ConcurrentSkipListMap<>();
+	private final NavigableMap<Long, Set<String>> lengths = new ConcurrentSkipListMap<>();
+	private final Map<String, Set<String>> tokens = new ConcurrentHashMap<>();
+	private final Map<State, Set<String>> states = new EnumMap<>(State.class);
+	private final Set<String> shared = ConcurrentHashMap.newKeySet();
+
+	AllocationIndex(Map<String, ResourceAllocation> allocations) {
+		this.allocations = allocations;
+		for (State s : State.values()) {
+			this.states.put(s, ConcurrentHashMap.newKeySet());
+		}
+	}
+
+	void update(ResourceAllocation previous, ResourceAllocation current) {
+		boolean mode = current != null && (previous != null && previous.getDescription().equals(current.getDescription())
+				? this.shared.contains(current.getId()) : Tags.has(current, Tags.SHARED));
+		if (previous != null) {
+			remove(previous);
+		}
+		if (current != null) {
+			String id = current.getId();
+			if (mode) {
+				this.shared.add(id);
+			}
+			for (String r : current.getResourceIdsList()) {
+				this.resources.computeIfAbsent(r, k -> ConcurrentHashMap.newKeySet()).add(id);
+			}
+			this.begins.computeIfAbsent(current.getSlot().getBegin().getTime(), k -> ConcurrentHashMap.newKeySet()).add(id);
+			this.lengths.computeIfAbsent(length(current), k -> ConcurrentHashMap.newKeySet()).add(id);
+			String token = token(id);
+			if (token != null) {
+				this.tokens.computeIfAbsent(token, k -> ConcurrentHashMap.newKeySet()).add(id);
+			}
+			this.states.get(current.getState()).add(id);
+		}
+	}
+
+	private void remove(ResourceAllocation allocation) {
+		String id = allocation.getId();
+		for (String r : allocation.getResourceIdsList()) {
+			Set<String> ids = this.resources.get(r);
+			if (ids != null) {
+				ids.remove(id);
+				if (ids.isEmpty()) {
+					this.resources.remove(r, ids);
+				}
+			}
+		}
+		long begin = allocation.getSlot().getBegin().getTime();
+		Set<String> ids = this.begins.get(begin);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				this.begins.remove(begin, ids);
+			}
+		}
+		long length = length(allocation);
+		ids = this.lengths.get(length);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				this.lengths.remove(length, ids);
+			}
+		}
+		this.states.get(allocation.getState()).remove(id);
+		this.shared.remove(id);
+		String token = token(id);
+		if (token != null) {
+			ids = this.tokens.get(token);
+			if (ids != null) {
+				ids.remove(id);
+				if (ids.isEmpty()) {
+					this.tokens.remove(token, ids);
+				}
+			}
+		}
+	}
+
+	private static long length(ResourceAllocation allocation) {
+		return allocation.getSlot().getEnd().getTime() - allocation.getSlot().getBegin().getTime();
+	}
+
+	/**
+	 * @param id an allocation id
+	 * @return the token of an id of the form {@code name#token}, or
+	 * {@code null}
+	 */
+	static String token(String id) {
+		int split = id.lastIndexOf('#');
+		return (split > 0 && split < id.length() - 1) ? id.substring(split + 1) : null;
+	}
+
+	/**
+	 * @param id an allocation id
+	 * @return whether the live allocation with the given id is in shared mode
+	 */
+	boolean isShared(String id) {
+		return this.shared.contains(id);
+	}
+
+	int count(State state) {
+		return this.states.get(state).size();
+	}
+
+	ResourceAllocation get(String id) {
+		return this.allocations.get(id);
+	}
+
+	/**
+	 * Finds ids of allocations holding a resource that starts with the given
+	 * prefix.
+	 *
+	 * @param prefix the resource prefix
+	 * @return the matching ids
+	 */
+	Set<String> idsByPrefix(String prefix) {
+		Set<String> ids = new LinkedHashSet<>();
+		for (Set<String> s : this.resources.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+			ids.addAll(s);
+		}
+		return ids;
+	}
+
+	/**
+	 * Finds the resources of live allocations that start with the given
+	 * prefix.
+	 *
+	 * @param prefix the resource prefix
+	 * @return the matching resource ids
+	 */
+	Set<String> resourcesByPrefix(String prefix) {
+		return new LinkedHashSet<>(this.resources.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet());
+	}
+
+	/**
+	 * Finds ids of allocations sharing the given token.
+	 *
+	 * @param token the token without leading {@code #}
+	 * @return the matching ids
+	 */
+	Set<String> idsByToken(String token) {
+		Set<String> ids = this.tokens.get(token);
+		return ids != null ? new LinkedHashSet<>(ids) : new LinkedHashSet<>();
+	}
+
+	List<ResourceAllocation> byPrefix(String prefix) {
+		List<ResourceAllocation> result = new LinkedList<>();
+		for (ResourceAllocation a : resolve(idsByPrefix(prefix))) {
+			for (String r : a.getResourceIdsList()) {
+				if (r.startsWith(prefix)) {
+					result.add(a);
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	List<ResourceAllocation> byState(State state) {
+		List<ResourceAllocation> result = new LinkedList<>();
+		for (ResourceAllocation a : resolve(this.states.get(state))) {
+			if (a.getState().equals(state)) {
+				result.add(a);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds allocations whose slot overlaps the given time window. Only
+	 * allocations that begin within the window or at most the longest live
+	 * slot length before it are visited.
+	 *
+	 * @param begin the begin of the window in microseconds
+	 * @param end the end of the window in microseconds
+	 * @return the matching allocations
+	 */
+	List<ResourceAllocation> byWindow(long begin, long end) {
+		Map.Entry<Long, Set<String>> longest = this.lengths.lastEntry();
+		long reach = longest != null ? Math.max(0, longest.getKey()) : 0;
+		long from = begin >= Long.MIN_VALUE + reach ? begin - reach : Long.MIN_VALUE;
+		if (from > end) {
+			return new LinkedList<>();
+		}
+		Set<String> ids = new LinkedHashSet<>();
+		for (Set<String> s : this.begins.subMap(from, true, end, true).values()) {
+			ids.addAll(s);
+		}
+		List<ResourceAllocation> result = new LinkedList<>();
+		for (ResourceAllocation a : resolve(ids)) {
+			if (a.getSlot().getBegin().getTime() <= end && a.getSlot().getEnd().getTime() >= begin) {
+				result.add(a);
+			}
+		}
+		return result;
+	}
+
+	private List<ResourceAllocation> resolve(Collection<String> ids) {
+		List<ResourceAllocation> result = new LinkedList<>();
+		for (String id : ids) {
+			ResourceAllocation a = this.allocations.get(id);
+			if (a != null) {
+				result.add(a);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,40 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+
+/**
+ * Callback for in-process clients that are notified about allocation
+ * updates.
+ *
+ * Listeners are invoked synchronously on the thread that publishes the
+ * update, which may be the thread holding the allocation lock. They must
+ * therefore return quickly and must not block.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public interface AllocationListener {
+
+	/**
+	 * Called whenever the given allocation has been published.
+	 *
+	 * @param allocation the current state of the allocation
+	 */
+	void updated(ResourceAllocation allocation);
+}
@@ -17,16 +17,17 @@
 package de.citec.csra.allocation.srv;
 
 import static de.citec.csra.rst.util.StringRepresentation.shortString;
+import static de.citec.csra.rst.util.IntervalUtils.currentTimeInMicros;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import rsb.Event;
 import rsb.Factory;
 import rsb.Listener;
 import rsb.RSBException;
 import rsb.converter.DefaultConverterRepository;
-import rsb.converter.ProtocolBufferConverter;
 import rsb.filter.OriginFilter;
-import rsb.util.QueueAdapter;
 import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
 
 /**
@@ -38,7 +39,7 @@ public class AllocationServer {
 
 	static {
 		DefaultConverterRepository.getDefaultConverterRepository()
-				.addConverter(new ProtocolBufferConverter<>(ResourceAllocation.getDefaultInstance()));
+				.addConverter(SerializationCache.getInstance());
 	}
 
 	private final static Logger LOG = Logger.getLogger(AllocationServer.class.getName());
@@ -48,16 +49,18 @@ public class AllocationServer {
 	private static AllocationServer instance;
 	private static String scope;
 	private final Listener listener;
-	private final BlockingQueue<ResourceAllocation> queue;
+	private final BlockingQueue<Event> queue;
+	private final Metrics metrics;
 
 	private AllocationServer() throws InterruptedException, RSBException {
 
-		QueueAdapter<ResourceAllocation> qa = new QueueAdapter<>();
+		this.queue = new LinkedBlockingQueue<>();
+		this.metrics = Metrics.getInstance();
+		this.metrics.gauge("ingress_queue", this.queue::size);
 
 		this.listener = Factory.getInstance().createListener(getScope());
 		this.listener.addFilter(new OriginFilter(NotificationService.getInstance().getID(), true));
-		this.listener.addHandler(qa, true);
-		this.queue = qa.getQueue();
+		this.listener.addHandler((event) -> this.queue.add(event), true);
 	}
 
 	public static String getScope() {
@@ -83,8 +86,16 @@ public class AllocationServer {
 		LOG.log(Level.INFO, "Allocation service listening at ''{0}''.", this.listener.getScope());
 		Allocations.getInstance();
 		while (this.listener.isActive()) {
-			ResourceAllocation incoming = this.queue.take();
-			LOG.log(Level.FINE, "Received client update ''{0}''.", shortString(incoming));
+			Event event = this.queue.take();
+			if (!(event.getData() instanceof ResourceAllocation)) {
+				LOG.log(Level.WARNING, "Ignoring client update of unexpected type ''{0}''.", event.getData());
+				continue;
+			}
+			this.metrics.ingressWait.record(currentTimeInMicros() - event.getMetaData().getReceiveTime());
+			ResourceAllocation incoming = (ResourceAllocation) event.getData();
+			if (LOG.isLoggable(Level.FINE)) {
+				LOG.log(Level.FINE, "Received client update ''{0}''.", shortString(incoming));
+			}
 			Allocations.getInstance().handle(incoming);
 		}
 	}
@@ -93,12 +104,16 @@ public class AllocationServer {
 		if (!this.listener.isActive()) {
 			this.listener.activate();
 		}
+		QueryServer.getInstance().activate();
+		this.metrics.serve();
 	}
 
 	public void deactivate() throws RSBException, InterruptedException {
 		if (this.listener.isActive()) {
 			this.listener.deactivate();
 		}
+		QueryServer.getInstance().deactivate();
+		this.metrics.shutdown();
 		instance = null;
 	}
 }
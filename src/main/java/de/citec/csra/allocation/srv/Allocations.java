@@ -19,22 +19,32 @@ package de.citec.csra.allocation.srv;
 import de.citec.csra.rst.util.IntervalUtils;
 import static de.citec.csra.rst.util.IntervalUtils.currentTimeInMicros;
 import static de.citec.csra.rst.util.StringRepresentation.shortString;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
 import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.HUMAN;
 import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.NO;
 import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
 import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
 import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
 
 /**
  *
@@ -45,14 +55,44 @@ public class Allocations {
 
 	private static Allocations instance;
 	private final Map<String, ResourceAllocation> allocations;
-	private final NotificationService notifications;
+	private NotificationService notifications;
+	private final AllocationIndex index;
+	private final Metrics metrics;
+	private final Decision decision = new Decision();
+	private final DecisionRecorder recorder = DecisionRecorder.getInstance();
+	private final Capacities capacities = Capacities.getInstance();
+	private final WaitList waiting = new WaitList();
+	private final WaitList shortened = new WaitList();
+	private final List<String> freed = new ArrayList<>();
+	private boolean admitting = false;
+	private int depth = 0;
+	private final Set<String> gang = ConcurrentHashMap.newKeySet();
+	private final Map<String, List<ResourceAllocation>> gangs = new HashMap<>();
+	private final Map<String, String> memberships = new HashMap<>();
+	private final Recurrences recurrences = new Recurrences();
+	private final Set<Recurrences.Series> due = new LinkedHashSet<>();
+	private final Leases leases = new Leases(this::expire);
+	private final Deadlines deadlines = new Deadlines();
 	private final static Pattern TICKET = Pattern.compile("^(.+)#(.+)$");
+	private final static String COSTVAR = "ALLOCATION_COST_AWARE";
+	private final static int MAX_AVOIDED = 8;
+	private volatile boolean costAware = Boolean.parseBoolean(System.getenv(COSTVAR));
 
 	private final static Logger LOG = Logger.getLogger(Allocations.class.getName());
 
 	private Allocations() {
 		this.allocations = new ConcurrentHashMap<>();
+		this.index = new AllocationIndex(this.allocations);
 		this.notifications = NotificationService.getInstance();
+		this.metrics = Metrics.getInstance();
+		for (State s : State.values()) {
+			this.metrics.gauge("live_" + s.name().toLowerCase(), () -> this.index.count(s));
+		}
+		this.metrics.gauge("waiting", this.waiting::size);
+		this.metrics.gauge("shortened", this.shortened::size);
+		this.metrics.gauge("gangs", this.gangs::size);
+		this.metrics.gauge("series", this.recurrences::size);
+		this.metrics.gauge("leases", this.leases::size);
 	}
 
 	synchronized public static Allocations getInstance() {
@@ -121,8 +161,7 @@ public class Allocations {
 	ResourceAllocation setState(String id, State newState) {
 		synchronized (this.allocations) {
 				if (this.allocations.containsKey(id)) {
-					return this.allocations.put(id,
-							ResourceAllocation.
+					return store(ResourceAllocation.
 							newBuilder(this.allocations.get(id)).
 							setState(newState).
 							build());
@@ -153,8 +192,7 @@ public class Allocations {
 						newDescription = reason + "[1]";
 					}
 
-					return this.allocations.put(id,
-							ResourceAllocation.
+					return store(ResourceAllocation.
 							newBuilder(current).
 							setDescription(newDescription).
 							build());
@@ -165,56 +203,252 @@ public class Allocations {
 		}
 	}
 
+	ResourceAllocation store(ResourceAllocation allocation) {
+		synchronized (this.allocations) {
+				ResourceAllocation previous = this.allocations.put(allocation.getId(), allocation);
+				if (previous != null && previous != allocation) {
+					SerializationCache.getInstance().invalidate(allocation.getId());
+				}
+				this.index.update(previous, allocation);
+				this.metrics.occupancy.update(previous, allocation);
+				if (previous == null || !previous.getState().equals(allocation.getState())) {
+					this.metrics.transitions.get(allocation.getState()).incrementAndGet();
+				}
+				return previous;
+		}
+	}
+
 	ResourceAllocation remove(String id) {
 		synchronized (this.allocations) {
-				return this.allocations.remove(id);
+				SerializationCache.getInstance().invalidate(id);
+				ResourceAllocation previous = this.allocations.remove(id);
+				this.index.update(previous, null);
+				this.metrics.occupancy.update(previous, null);
+				this.shortened.remove(id);
+				if (previous != null) {
+					reclaim(previous);
+					if (isFinal(previous.getState())) {
+						this.leases.revoke(id);
+						Recurrences.Series series = this.recurrences.ended(id);
+						if (series != null) {
+							this.due.add(series);
+						}
+					}
+				}
+				return previous;
+		}
+	}
+
+	/**
+	 * Removes all live allocations and discards the resources they have
+	 * freed, so that nothing is reconsidered afterwards. Used to restore a
+	 * defined table between benchmark invocations.
+	 */
+	void clear() {
+		synchronized (this.allocations) {
+				for (String id : new ArrayList<>(this.allocations.keySet())) {
+					remove(id);
+				}
+				this.freed.clear();
+				this.due.clear();
+		}
+	}
+
+	/**
+	 * Enables or disables cost-aware slot selection, which is initially
+	 * configured with {@code ALLOCATION_COST_AWARE}. New requests and
+	 * modifications then prefer equally long slots that displace cheaper
+	 * allocations.
+	 *
+	 * @param costAware whether slots are selected by displacement cost
+	 */
+	public void setCostAware(boolean costAware) {
+		this.costAware = costAware;
+	}
+
+	/**
+	 * Replaces the service that publishes decisions, e.g. to measure the
+	 * engine without notifiers.
+	 *
+	 * @param notifications the notification service
+	 */
+	void setNotifications(NotificationService notifications) {
+		this.notifications = notifications;
+	}
+
+	/**
+	 * Removes an allocation that has been finished outside of a decision, e.g.
+	 * at the end of its slot, and reconsiders the resources it has freed.
+	 *
+	 * @param id the allocation id
+	 * @return the removed allocation
+	 */
+	ResourceAllocation retire(String id) {
+		synchronized (this.allocations) {
+				ResourceAllocation previous = remove(id);
+				if (this.depth == 0) {
+					settle();
+				}
+				return previous;
 		}
 	}
 
+	AllocationIndex getIndex() {
+		return this.index;
+	}
+
 	public boolean handle(ResourceAllocation incoming) {
+		synchronized (this.allocations) {
+			ResourceAllocation current = this.allocations.get(incoming.getId());
+			return decided(incoming, current != null ? current.getState() : null, () -> decide(incoming));
+		}
+	}
+
+	/**
+	 * Takes a decision and records it. Resources freed by the decision are
+	 * reconsidered once the outermost decision is finished, each admitted
+	 * request is then decided and recorded on its own.
+	 *
+	 * @param incoming the request the decision is taken for
+	 * @param previous the state of the allocation before the decision
+	 * @param body the decision
+	 * @return the result of the decision
+	 */
+	private boolean decided(ResourceAllocation incoming, State previous, BooleanSupplier body) {
+		synchronized (this.allocations) {
+			long locked = System.nanoTime();
+			this.decision.reset(incoming, previous);
+			FlightEvents.begin(this.decision);
+			boolean result = false;
+			this.depth++;
+			try {
+				result = body.getAsBoolean();
+			} finally {
+				this.depth--;
+				FlightEvents.commit(this.decision, result);
+				this.recorder.record(this.decision, result, System.nanoTime() - locked);
+				this.metrics.lockHold.record((System.nanoTime() - locked) / 1000);
+			}
+			if (this.depth == 0) {
+				settle();
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Handles a gang of new allocation requests that is decided atomically.
+	 *
+	 * @param members the requests, all in state {@code REQUESTED}
+	 * @return whether all members have been scheduled
+	 * @see #requestAll(java.util.List)
+	 */
+	public boolean handleAll(List<ResourceAllocation> members) {
+		synchronized (this.allocations) {
+			if (members.isEmpty()) {
+				return false;
+			}
+			return decided(members.get(0), null, () -> timed(REQUESTED, System.nanoTime(), requestAll(members)));
+		}
+	}
+
+	private boolean decide(ResourceAllocation incoming) {
 		synchronized (this.allocations) {
 				ResourceAllocation current = get(incoming.getId());
 				State currentState = (current != null) ? current.getState() : null;
 				State incomingState = incoming.getState();
-				String incomingStr = shortString(incoming);
-				String currentStr = shortString(incoming);
+				long start = System.nanoTime();
 				switch (incomingState) {
 					case REQUESTED:
-						if (currentState == null) {
-							LOG.log(Level.INFO,
-									"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
-									new Object[]{currentState, incomingState, incomingStr});
-							return request(incoming);
+						if (currentState == null && this.waiting.contains(incoming.getId())) {
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO, "Allocation with id ''{0}'' is already waiting for a slot", incoming.getId());
+							}
+							this.leases.renew(incoming.getId());
+							return timed(incomingState, start, true);
+						} else if (currentState == null && pending(incoming.getId()) != null) {
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO, "Allocation with id ''{0}'' is already waiting for its gang", incoming.getId());
+							}
+							return timed(incomingState, start, true);
+						} else if (currentState == null && Tags.has(incoming, Tags.GANG)) {
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO,
+										"Collecting client-requested gang member ''{0}'' ({1})",
+										new Object[]{Tags.value(incoming, Tags.GANG), shortString(incoming)});
+							}
+							return timed(incomingState, start, gather(incoming));
+						} else if (currentState == null && Tags.has(incoming, Tags.EVERY)) {
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO,
+										"Starting client-requested recurrence ''{0}'' ({1})",
+										new Object[]{Tags.value(incoming, Tags.EVERY), shortString(incoming)});
+							}
+							return timed(incomingState, start, recur(incoming));
+						} else if (currentState == null) {
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO,
+										"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
+										new Object[]{currentState, incomingState, shortString(incoming)});
+							}
+							return timed(incomingState, start, request(incoming));
 						} else {
-							LOG.log(Level.INFO,
-									"Informing client about current allocation with id ''{0}'' ({1})",
-									new Object[]{incoming.getId(), currentStr});
-							return inform(incoming);
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO,
+										"Informing client about current allocation with id ''{0}'' ({1})",
+										new Object[]{incoming.getId(), shortString(current)});
+							}
+							return timed(incomingState, start, inform(incoming));
 						}
 					case CANCELLED:
-						if (currentState != null && currentState.equals(SCHEDULED)) {
-							LOG.log(Level.INFO,
-									"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
-									new Object[]{currentState, incomingState, incomingStr});
-							return finalize(incoming, "client request");
+						if (currentState == null && this.waiting.contains(incoming.getId())) {
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO,
+										"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
+										new Object[]{REQUESTED, incomingState, shortString(incoming)});
+							}
+							halt(incoming.getId());
+							return timed(incomingState, start, dismiss(unwait(incoming.getId()), CANCELLED, "client request"));
+						} else if (currentState == null && pending(incoming.getId()) != null) {
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO,
+										"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
+										new Object[]{REQUESTED, incomingState, shortString(incoming)});
+							}
+							return timed(incomingState, start, disband(pending(incoming.getId()), incoming.getId(), "client request"));
+						} else if (currentState != null && currentState.equals(SCHEDULED)) {
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO,
+										"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
+										new Object[]{currentState, incomingState, shortString(incoming)});
+							}
+							halt(incoming.getId());
+							return timed(incomingState, start, finalize(incoming, "client request"));
 						}
 						break;
 					case ABORTED:
 					case RELEASED:
 						if (currentState != null && currentState.equals(ALLOCATED)) {
-							LOG.log(Level.INFO,
-									"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
-									new Object[]{currentState, incomingState, incomingStr});
-							return finalize(incoming, "client request");
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO,
+										"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
+										new Object[]{currentState, incomingState, shortString(incoming)});
+							}
+							if (incomingState.equals(ABORTED)) {
+								halt(incoming.getId());
+							}
+							return timed(incomingState, start, finalize(incoming, "client request"));
 						}
 						break;
 					case ALLOCATED:
 					case SCHEDULED:
 						if (currentState != null && currentState.equals(incoming.getState())) {
-							LOG.log(Level.INFO,
-									"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
-									new Object[]{currentState, incomingState, incomingStr});
-							return modify(incoming);
+							if (LOG.isLoggable(Level.INFO)) {
+								LOG.log(Level.INFO,
+										"Performing client-requested state transition ''{0}'' -> ''{1}'' ({2})",
+										new Object[]{currentState, incomingState, shortString(incoming)});
+							}
+							return timed(incomingState, start, modify(incoming));
 						}
 						break;
 					case REJECTED:
@@ -223,38 +457,403 @@ public class Allocations {
 				}
 				LOG.log(Level.WARNING,
 						"Illegal client-requested state transition ''{0}'' -> ''{1}'', ignoring ({2})",
-						new Object[]{currentState, incomingState, incomingStr});
+						new Object[]{currentState, incomingState, shortString(incoming)});
 				return false;
 		}
 	}
 
+	private boolean timed(State transition, long start, boolean result) {
+		this.metrics.decision.get(transition).record((System.nanoTime() - start) / 1000);
+		return result;
+	}
+
 	boolean request(ResourceAllocation allocation) {
 		synchronized (this.allocations) {
 
-				this.allocations.put(allocation.getId(), allocation);
+				store(allocation);
 				this.notifications.init(allocation.getId());
+				lease(allocation);
 
 				Interval match = findSlot(allocation, false);
-				if (match == null) {
-					LOG.log(Level.FINER, "Allocation request failed (slot not available): {0}", shortString(allocation));
+				if (match == null && Tags.has(allocation, Tags.WAIT)) {
+					if (LOG.isLoggable(Level.FINER)) {
+						LOG.log(Level.FINER, "Allocation request waiting (slot not available): {0}", shortString(allocation));
+					}
+					enqueue(allocation);
+					return false;
+				} else if (match == null) {
+					if (LOG.isLoggable(Level.FINER)) {
+						LOG.log(Level.FINER, "Allocation request failed (slot not available): {0}", shortString(allocation));
+					}
 					reject(allocation, "slot not available");
 					return false;
 				} else if (match.getEnd().getTime() < currentTimeInMicros()) {
-					LOG.log(Level.FINER, "Allocation request failed (slot expired): {0}", shortString(allocation));
+					if (LOG.isLoggable(Level.FINER)) {
+						LOG.log(Level.FINER, "Allocation request failed (slot expired): {0}", shortString(allocation));
+					}
 					release(allocation, "slot expired");
 					return false;
 				} else {
 					allocation = ResourceAllocation.newBuilder(allocation).setSlot(match).build();
-					LOG.log(Level.FINER, "Allocation request successful: {0}", shortString(allocation));
+					this.decision.chosen = match;
+					if (LOG.isLoggable(Level.FINER)) {
+						LOG.log(Level.FINER, "Allocation request successful: {0}", shortString(allocation));
+					}
 					schedule(allocation);
 					return true;
 				}
 		}
 	}
 
+	/**
+	 * Decides a gang of requests atomically: either all members are scheduled
+	 * or none is. Members are fitted one after another, each one blocked by
+	 * the members fitted before regardless of their priority, and a single
+	 * cascade is performed once all of them are placed. Clients are informed
+	 * only after the decision, rejected gangs are never published as
+	 * scheduled.
+	 *
+	 * @param members the requests
+	 * @return whether all members have been scheduled
+	 */
+	boolean requestAll(List<ResourceAllocation> members) {
+		synchronized (this.allocations) {
+				for (ResourceAllocation member : members) {
+					if (this.allocations.containsKey(member.getId()) || this.waiting.contains(member.getId())) {
+						LOG.log(Level.WARNING, "attempt to request gang with known allocation ''{0}'' ignored", member.getId());
+						return false;
+					}
+				}
+				List<ResourceAllocation> fitted = new ArrayList<>();
+				String reason = null;
+				try {
+					for (ResourceAllocation member : members) {
+						this.gang.add(member.getId());
+					}
+					for (ResourceAllocation member : members) {
+						store(member);
+						Interval match = findSlot(member, false);
+						if (match == null) {
+							reason = "slot not available";
+						} else if (match.getEnd().getTime() < currentTimeInMicros()) {
+							reason = "slot expired";
+						} else {
+							this.decision.chosen = match;
+							ResourceAllocation placed = ResourceAllocation.newBuilder(member).setSlot(match).build();
+							store(placed);
+							fitted.add(placed);
+							continue;
+						}
+						if (LOG.isLoggable(Level.FINER)) {
+							LOG.log(Level.FINER, "Gang request failed ({0}): {1}", new Object[]{reason, shortString(member)});
+						}
+						break;
+					}
+					if (reason == null) {
+						List<ResourceAllocation> scheduled = new ArrayList<>(fitted.size());
+						for (ResourceAllocation placed : fitted) {
+							scheduled.add(ResourceAllocation.newBuilder(placed).setState(SCHEDULED).build());
+							store(scheduled.get(scheduled.size() - 1));
+						}
+						updateAffected(scheduled, "slot superseded");
+					}
+				} finally {
+					this.gang.clear();
+				}
+				if (reason == null) {
+					if (LOG.isLoggable(Level.FINER)) {
+						LOG.log(Level.FINER, "Gang request successful: {0} members", fitted.size());
+					}
+					for (ResourceAllocation placed : fitted) {
+						this.notifications.init(placed.getId());
+						lease(placed);
+					}
+					return true;
+				} else {
+					int failed = fitted.size();
+					for (int i = 0; i < members.size(); i++) {
+						ResourceAllocation member = members.get(i);
+						dismiss(get(member.getId()) != null ? get(member.getId()) : member, REJECTED, i == failed ? reason : "gang member rejected");
+					}
+					return false;
+				}
+		}
+	}
+
+	/**
+	 * Collects a member of a gang announced by a remote client with a
+	 * {@code [gang=id:n]} tag. The gang is decided once all {@code n} members
+	 * have arrived. Members of incomplete gangs are acknowledged and held
+	 * back, the gang is rejected once the window of one of its members has
+	 * passed.
+	 *
+	 * @param member the request
+	 * @return whether the gang has been completed and scheduled
+	 */
+	private boolean gather(ResourceAllocation member) {
+		synchronized (this.allocations) {
+				String value = Tags.value(member, Tags.GANG);
+				String key;
+				int size;
+				try {
+					int split = value.lastIndexOf(':');
+					key = value.substring(0, split);
+					size = Integer.parseInt(value.substring(split + 1));
+				} catch (IndexOutOfBoundsException | NumberFormatException ex) {
+					LOG.log(Level.WARNING, "Malformed gang tag ''{0}'', rejecting ''{1}''", new Object[]{value, member.getId()});
+					dismiss(member, REJECTED, "malformed gang");
+					return false;
+				}
+				List<ResourceAllocation> members = this.gangs.computeIfAbsent(key, k -> new ArrayList<>());
+				members.add(member);
+				this.memberships.put(member.getId(), key);
+				if (members.size() < size) {
+					hold(key, member);
+					return false;
+				}
+				dissolve(key);
+				this.deadlines.cancel("gang:" + key);
+				return requestAll(members);
+		}
+	}
+
+	/**
+	 * Informs the client that a member of an incomplete gang has been
+	 * received. The member is not stored, so that it neither blocks nor is
+	 * blocked until its gang is complete.
+	 *
+	 * @param key the gang
+	 * @param member the request
+	 */
+	private void hold(String key, ResourceAllocation member) {
+		synchronized (this.allocations) {
+				store(member);
+				setReason(member.getId(), "waiting for gang");
+				this.notifications.announce(member.getId());
+				remove(member.getId());
+				long end = Long.MAX_VALUE;
+				for (ResourceAllocation m : this.gangs.get(key)) {
+					Interval window = m.hasConstraints() ? m.getConstraints() : m.getSlot();
+					end = Math.min(end, window.getEnd().getTime());
+				}
+				this.deadlines.schedule("gang:" + key, end, () -> abandon(key));
+		}
+	}
+
+	/**
+	 * Rejects a gang that is still incomplete when the window of one of its
+	 * members has passed. Invoked by the deadline thread.
+	 *
+	 * @param key the gang
+	 */
+	private void abandon(String key) {
+		synchronized (this.allocations) {
+				List<ResourceAllocation> members = dissolve(key);
+				if (members == null) {
+					return;
+				}
+				if (LOG.isLoggable(Level.FINER)) {
+					LOG.log(Level.FINER, "Gang incomplete: {0}", key);
+				}
+				decided(ResourceAllocation.newBuilder(members.get(0)).setState(REJECTED).build(), null, () -> {
+					for (ResourceAllocation m : members) {
+						dismiss(m, REJECTED, "gang incomplete");
+					}
+					return true;
+				});
+		}
+	}
+
+	private String pending(String id) {
+		synchronized (this.allocations) {
+				return this.memberships.get(id);
+		}
+	}
+
+	private List<ResourceAllocation> dissolve(String key) {
+		synchronized (this.allocations) {
+				List<ResourceAllocation> members = this.gangs.remove(key);
+				if (members != null) {
+					for (ResourceAllocation member : members) {
+						this.memberships.remove(member.getId());
+					}
+				}
+				return members;
+		}
+	}
+
+	/**
+	 * Dismisses an incomplete gang because one of its members has been
+	 * cancelled by the client.
+	 *
+	 * @param key the gang
+	 * @param id the cancelled member
+	 * @param reason the reason
+	 * @return always {@code true}
+	 */
+	private boolean disband(String key, String id, String reason) {
+		synchronized (this.allocations) {
+				this.deadlines.cancel("gang:" + key);
+				for (ResourceAllocation member : dissolve(key)) {
+					if (member.getId().equals(id)) {
+						dismiss(member, CANCELLED, reason);
+					} else {
+						dismiss(member, REJECTED, "gang member cancelled");
+					}
+				}
+				return true;
+		}
+	}
+
+	/**
+	 * Starts a periodic series of allocations. The request itself becomes the
+	 * first occurrence, further occurrences are requested lazily whenever a
+	 * live one is finished, so that only a fixed number of them is live at any
+	 * time. Each occurrence is decided and recorded on its own after the
+	 * decision that finished its predecessor, a preempted occurrence does not
+	 * affect the rest of the series.
+	 *
+	 * @param allocation the request carrying the recurrence tags
+	 * @return whether the first occurrence has been scheduled
+	 */
+	boolean recur(ResourceAllocation allocation) {
+		synchronized (this.allocations) {
+				Recurrences.Series series = this.recurrences.start(allocation);
+				if (series == null) {
+					LOG.log(Level.WARNING, "Malformed recurrence, rejecting ''{0}''", allocation.getId());
+					dismiss(allocation, REJECTED, "malformed recurrence");
+					return false;
+				}
+				boolean first = materialize(series, this::request);
+				this.due.add(series);
+				return first;
+		}
+	}
+
+	private boolean materialize(Recurrences.Series series, Predicate<ResourceAllocation> request) {
+		synchronized (this.allocations) {
+				ResourceAllocation occurrence = this.recurrences.next(series, currentTimeInMicros());
+				if (occurrence == null) {
+					return false;
+				}
+				boolean scheduled = request.test(occurrence) || this.waiting.contains(occurrence.getId());
+				series.failures = scheduled ? 0 : series.failures + 1;
+				return scheduled;
+		}
+	}
+
+	/**
+	 * Tops up the live occurrences of a series that has lost one, each
+	 * occurrence is requested in a decision of its own. A series is abandoned
+	 * once as many consecutive occurrences as are kept live could not be
+	 * scheduled. Series that have already been dropped are skipped.
+	 */
+	private void roll() {
+		synchronized (this.allocations) {
+				Iterator<Recurrences.Series> it = this.due.iterator();
+				Recurrences.Series series = it.next();
+				it.remove();
+				if (!this.recurrences.contains(series)) {
+					return;
+				}
+				while (!series.stopped && !series.exhausted()
+						&& series.live.size() < this.recurrences.ahead()
+						&& series.failures < this.recurrences.ahead()) {
+					materialize(series, o -> decided(o, null, () -> request(o)));
+				}
+				if (series.live.isEmpty()) {
+					if (!series.stopped && !series.exhausted()) {
+						LOG.log(Level.WARNING, "Abandoning recurrence ''{0}'', occurrences could not be scheduled", series.base.getId());
+					}
+					this.recurrences.drop(series);
+					this.notifications.ended(series.base.getId());
+				}
+		}
+	}
+
+	/**
+	 * Stops the series of an occurrence that is cancelled or aborted by its
+	 * client and terminates its other live occurrences.
+	 *
+	 * @param id the occurrence id
+	 */
+	private void halt(String id) {
+		synchronized (this.allocations) {
+				Recurrences.Series series = this.recurrences.of(id);
+				if (series == null || series.stopped) {
+					return;
+				}
+				series.stopped = true;
+				for (String other : new ArrayList<>(series.live)) {
+					if (!other.equals(id)) {
+						terminate(other, "series cancelled");
+					}
+				}
+		}
+	}
+
+	private static boolean isFinal(State state) {
+		switch (state) {
+			case REJECTED:
+			case CANCELLED:
+			case ABORTED:
+			case RELEASED:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private void lease(ResourceAllocation allocation) {
+		if (Tags.has(allocation, Tags.LEASE)) {
+			try {
+				this.leases.grant(allocation.getId(), Long.parseLong(Tags.value(allocation, Tags.LEASE)));
+			} catch (NumberFormatException ex) {
+				LOG.log(Level.WARNING, "Ignoring malformed lease of ''{0}''", allocation.getId());
+			}
+		}
+	}
+
+	/**
+	 * Renews the lease of an allocation or waiting request.
+	 *
+	 * @param id the allocation id
+	 * @return whether the allocation holds a lease
+	 */
+	boolean renew(String id) {
+		return this.leases.renew(id);
+	}
+
+	/**
+	 * Terminates an allocation whose client has not renewed its lease in
+	 * time. Invoked by the lease thread.
+	 *
+	 * @param id the allocation id
+	 */
+	private void expire(String id) {
+		synchronized (this.allocations) {
+				if (get(id) == null && !this.waiting.contains(id)) {
+					return;
+				}
+				LOG.log(Level.WARNING, "Lease of allocation ''{0}'' expired, terminating", id);
+				this.metrics.counter("lease_expired").incrementAndGet();
+				cancel(id, "lease expired");
+		}
+	}
+
+	/**
+	 * Answers a repeated request of a known allocation. Requests of
+	 * allocations holding a lease are heartbeats that renew the lease and are
+	 * not answered, other clients are informed about the current state.
+	 *
+	 * @param allocation the repeated request
+	 * @return always {@code true}
+	 */
 	boolean inform(ResourceAllocation allocation) {
 		synchronized (this.allocations) {
-				this.notifications.update(allocation.getId(), true);
+				if (!this.leases.renew(allocation.getId())) {
+					this.notifications.inform(allocation.getId());
+				}
 				return true;
 		}
 	}
@@ -274,14 +873,21 @@ public class Allocations {
 	boolean modify(ResourceAllocation allocation) {
 		synchronized (this.allocations) {
 				if (isAlive(allocation.getId())) {
+					this.leases.renew(allocation.getId());
 					Interval match = findSlot(allocation, false);
 					if (match == null) {
-						LOG.log(Level.FINER, "Allocation modification failed (slot not available): {0}", shortString(allocation));
+						if (LOG.isLoggable(Level.FINER)) {
+							LOG.log(Level.FINER, "Allocation modification failed (slot not available): {0}", shortString(allocation));
+						}
 						update(get(allocation.getId()), "slot not available", true);
 						return false;
 					} else {
-						LOG.log(Level.FINER, "Allocation modification successful: {0}", shortString(allocation));
+						if (LOG.isLoggable(Level.FINER)) {
+							LOG.log(Level.FINER, "Allocation modification successful: {0}", shortString(allocation));
+						}
 						allocation = ResourceAllocation.newBuilder(allocation).setSlot(match).build();
+						this.decision.chosen = match;
+						this.shortened.remove(allocation.getId());
 						update(allocation, "modification successful", true);
 						return true;
 					}
@@ -294,9 +900,11 @@ public class Allocations {
 
 	void schedule(ResourceAllocation allocation) {
 		synchronized (this.allocations) {
-				LOG.log(Level.FINE, "Scheduling: {0}", shortString(allocation));
+				if (LOG.isLoggable(Level.FINE)) {
+					LOG.log(Level.FINE, "Scheduling: {0}", shortString(allocation));
+				}
 				if (isAlive(allocation.getId())) {
-					this.allocations.put(allocation.getId(), allocation);
+					store(allocation);
 					setState(allocation.getId(), SCHEDULED);
 					updateAffected(allocation, "slot superseded");
 					this.notifications.update(allocation.getId(), true);
@@ -308,7 +916,9 @@ public class Allocations {
 
 	void reject(ResourceAllocation allocation, String reason) {
 		synchronized (this.allocations) {
-				LOG.log(Level.FINE, "Rejecting: {0}", shortString(allocation));
+				if (LOG.isLoggable(Level.FINE)) {
+					LOG.log(Level.FINE, "Rejecting: {0}", shortString(allocation));
+				}
 				if (isAlive(allocation.getId())) {
 					setState(allocation.getId(), REJECTED);
 					if (reason != null) {
@@ -324,7 +934,9 @@ public class Allocations {
 
 	void release(ResourceAllocation allocation, String reason) {
 		synchronized (this.allocations) {
-				LOG.log(Level.FINE, "Releasing: {0}", shortString(allocation));
+				if (LOG.isLoggable(Level.FINE)) {
+					LOG.log(Level.FINE, "Releasing: {0}", shortString(allocation));
+				}
 				if (isAlive(allocation.getId())) {
 					setState(allocation.getId(), RELEASED);
 					if (reason != null) {
@@ -340,9 +952,11 @@ public class Allocations {
 
 	void update(ResourceAllocation allocation, String reason, boolean updateAffected) {
 		synchronized (this.allocations) {
-				LOG.log(Level.FINE, "Updating: {0}", shortString(allocation));
+				if (LOG.isLoggable(Level.FINE)) {
+					LOG.log(Level.FINE, "Updating: {0}", shortString(allocation));
+				}
 				if (isAlive(allocation.getId())) {
-					this.allocations.put(allocation.getId(), allocation);
+					store(allocation);
 					if (reason != null) {
 						setReason(allocation.getId(), reason);
 					}
@@ -358,9 +972,11 @@ public class Allocations {
 
 	boolean finalize(ResourceAllocation allocation, String reason) {
 		synchronized (this.allocations) {
-				LOG.log(Level.FINE, "Finalizing: {0}", shortString(allocation));
+				if (LOG.isLoggable(Level.FINE)) {
+					LOG.log(Level.FINE, "Finalizing: {0}", shortString(allocation));
+				}
 				if (isAlive(allocation.getId())) {
-					this.allocations.put(allocation.getId(), allocation);
+					store(allocation);
 					if (reason != null) {
 						setReason(allocation.getId(), reason);
 					}
@@ -374,6 +990,328 @@ public class Allocations {
 		}
 	}
 
+	/**
+	 * Puts a request that could not be scheduled on the wait list. The client
+	 * is informed and the request is removed from the allocation table, so
+	 * that it neither blocks nor is blocked until it is admitted. Requests that
+	 * are still waiting when their window has passed are dismissed.
+	 *
+	 * @param allocation the request
+	 */
+	void enqueue(ResourceAllocation allocation) {
+		synchronized (this.allocations) {
+				setReason(allocation.getId(), "waiting for slot");
+				this.notifications.update(allocation.getId(), true);
+				remove(allocation.getId());
+				this.notifications.update(allocation.getId(), false);
+				this.waiting.add(allocation);
+				String id = allocation.getId();
+				Interval window = allocation.hasConstraints() ? allocation.getConstraints() : allocation.getSlot();
+				this.deadlines.schedule("wait:" + id, window.getEnd().getTime(), () -> lapse(id));
+		}
+	}
+
+	private ResourceAllocation unwait(String id) {
+		synchronized (this.allocations) {
+				this.deadlines.cancel("wait:" + id);
+				return this.waiting.remove(id);
+		}
+	}
+
+	/**
+	 * Dismisses a waiting request whose window has passed. Invoked by the
+	 * deadline thread.
+	 *
+	 * @param id the id of the request
+	 */
+	private void lapse(String id) {
+		synchronized (this.allocations) {
+				if (!this.waiting.contains(id)) {
+					return;
+				}
+				if (LOG.isLoggable(Level.FINER)) {
+					LOG.log(Level.FINER, "Waiting request expired: {0}", id);
+				}
+				ResourceAllocation waiter = unwait(id);
+				decided(ResourceAllocation.newBuilder(waiter).setState(RELEASED).build(), null,
+						() -> dismiss(waiter, RELEASED, "slot expired"));
+		}
+	}
+
+	boolean dismiss(ResourceAllocation waiter, State state, String reason) {
+		synchronized (this.allocations) {
+				if (LOG.isLoggable(Level.FINE)) {
+					LOG.log(Level.FINE, "Dismissing waiting request: {0}", shortString(waiter));
+				}
+				store(ResourceAllocation.newBuilder(waiter).setState(state).build());
+				if (reason != null) {
+					setReason(waiter.getId(), reason);
+				}
+				this.notifications.announce(waiter.getId());
+				remove(waiter.getId());
+				return true;
+		}
+	}
+
+	/**
+	 * Collects the resources of an allocation that has just been removed if
+	 * shortened reservations or waiting requests may benefit from them. They
+	 * are reconsidered once the current decision is finished, see
+	 * {@link #settle()}.
+	 *
+	 * @param removed the removed allocation
+	 */
+	private void reclaim(ResourceAllocation removed) {
+		synchronized (this.allocations) {
+				if ((this.waiting.size() == 0 && this.shortened.size() == 0)
+						|| removed.getState().equals(REQUESTED) || removed.getState().equals(REJECTED)) {
+					return;
+				}
+				this.freed.addAll(removed.getResourceIdsList());
+		}
+	}
+
+	/**
+	 * Reconsiders reservations that have been shortened and waiting requests
+	 * that share resources freed since the last invocation. Shortened
+	 * reservations regrow first, then waiting requests are admitted, each one
+	 * in a decision of its own. Series that have lost an occurrence are topped
+	 * up afterwards. Resources freed meanwhile are handled in the same pass.
+	 */
+	private void settle() {
+		synchronized (this.allocations) {
+				if (this.admitting) {
+					return;
+				}
+				this.admitting = true;
+				try {
+					while (!this.freed.isEmpty() || !this.due.isEmpty()) {
+						if (!this.freed.isEmpty()) {
+							backfill();
+						} else {
+							roll();
+						}
+					}
+				} finally {
+					this.admitting = false;
+				}
+		}
+	}
+
+	private void backfill() {
+		synchronized (this.allocations) {
+				List<String> resources = new ArrayList<>(this.freed);
+				this.freed.clear();
+				for (ResourceAllocation original : this.shortened.candidates(resources)) {
+					regrow(original);
+				}
+				for (ResourceAllocation waiter : this.waiting.candidates(resources)) {
+					if (!this.waiting.contains(waiter.getId())) {
+						continue;
+					}
+					Interval window = waiter.hasConstraints() ? waiter.getConstraints() : waiter.getSlot();
+					if (window.getEnd().getTime() < currentTimeInMicros()) {
+						dismiss(unwait(waiter.getId()), RELEASED, "slot expired");
+					} else if (findSlot(waiter, false) != null) {
+						if (LOG.isLoggable(Level.FINER)) {
+							LOG.log(Level.FINER, "Admitting waiting request: {0}", shortString(waiter));
+						}
+						unwait(waiter.getId());
+						decided(waiter, null, () -> request(waiter));
+					}
+				}
+		}
+	}
+
+	/**
+	 * Extends a reservation that has been shortened by a preemption towards
+	 * its original slot again, as far as the times adjacent to its current
+	 * slot are free. Running allocations only extend their end. Reservations
+	 * that have been moved out of their original slot return to it once it is
+	 * free as a whole.
+	 *
+	 * @param original the reservation before it has been shortened
+	 */
+	private void regrow(ResourceAllocation original) {
+		synchronized (this.allocations) {
+				ResourceAllocation current = get(original.getId());
+				if (current == null || !isAlive(current.getId()) || current.getState().equals(REQUESTED)) {
+					this.shortened.remove(original.getId());
+					return;
+				}
+				ResourceAllocation probe = ResourceAllocation.newBuilder(current).setSlot(original.getSlot()).setPriority(NO).build();
+				List<Interval> times = this.capacities.profile(probe, getBlockers(probe, true));
+				Interval slot = current.getSlot();
+				if (slot.getBegin().getTime() < original.getSlot().getBegin().getTime()
+						|| slot.getEnd().getTime() > original.getSlot().getEnd().getTime()) {
+					restore(original, current, times);
+					return;
+				}
+				long begin = slot.getBegin().getTime();
+				long end = slot.getEnd().getTime();
+				long earliest = current.getState().equals(ALLOCATED) ? begin : Math.max(original.getSlot().getBegin().getTime(), currentTimeInMicros());
+				long latest = original.getSlot().getEnd().getTime();
+				for (Interval t : times) {
+					long b = t.getBegin().getTime();
+					long e = t.getEnd().getTime();
+					if (e > slot.getEnd().getTime() && b < latest) {
+						latest = Math.max(slot.getEnd().getTime(), b);
+					}
+					if (b < slot.getBegin().getTime() && e > earliest) {
+						earliest = Math.min(slot.getBegin().getTime(), e);
+					}
+				}
+				begin = Math.min(begin, earliest);
+				end = Math.max(end, latest);
+				if (begin == slot.getBegin().getTime() && end == slot.getEnd().getTime()) {
+					return;
+				}
+				Interval regrown = Interval.newBuilder(slot).
+						setBegin(Timestamp.newBuilder().setTime(begin)).
+						setEnd(Timestamp.newBuilder().setTime(end)).build();
+				if (LOG.isLoggable(Level.FINER)) {
+					LOG.log(Level.FINER, "Regrowing shortened allocation: {0}", shortString(current));
+				}
+				update(ResourceAllocation.newBuilder(current).setSlot(regrown).build(), "slot regrown", false);
+				if (begin <= original.getSlot().getBegin().getTime() && end >= original.getSlot().getEnd().getTime()) {
+					this.shortened.remove(original.getId());
+				}
+		}
+	}
+
+	/**
+	 * Moves a reservation that has been moved by a preemption back to its
+	 * original slot if none of the blocked times overlaps it. Reservations
+	 * that are running or whose original slot has begun stay where they are.
+	 *
+	 * @param original the reservation before it has been moved
+	 * @param current the reservation as currently stored
+	 * @param times the blocked times within the original slot
+	 */
+	private void restore(ResourceAllocation original, ResourceAllocation current, List<Interval> times) {
+		synchronized (this.allocations) {
+				if (current.getState().equals(ALLOCATED) || original.getSlot().getBegin().getTime() < currentTimeInMicros()) {
+					this.shortened.remove(original.getId());
+					return;
+				}
+				for (Interval t : times) {
+					if (overlaps(t, original.getSlot())) {
+						return;
+					}
+				}
+				if (LOG.isLoggable(Level.FINER)) {
+					LOG.log(Level.FINER, "Restoring moved allocation: {0}", shortString(current));
+				}
+				update(ResourceAllocation.newBuilder(current).setSlot(original.getSlot()).build(), "slot restored", false);
+				this.shortened.remove(original.getId());
+		}
+	}
+
+	/**
+	 * Terminates an allocation or waiting request in a decision of its own.
+	 *
+	 * @param id the allocation id
+	 * @param reason the reason
+	 * @return whether the allocation has been terminated
+	 * @see #terminate(java.lang.String, java.lang.String)
+	 */
+	boolean cancel(String id, String reason) {
+		synchronized (this.allocations) {
+				ResourceAllocation current = this.allocations.get(id);
+				ResourceAllocation known = current != null ? current : this.waiting.get(id);
+				State target = current != null && current.getState().equals(ALLOCATED) ? ABORTED : CANCELLED;
+				ResourceAllocation incoming = (known != null ? ResourceAllocation.newBuilder(known) : ResourceAllocation.newBuilder().setId(id)).
+						setState(target).buildPartial();
+				return decided(incoming, current != null ? current.getState() : null, () -> terminate(id, reason));
+		}
+	}
+
+	boolean terminate(String id, String reason) {
+		synchronized (this.allocations) {
+				halt(id);
+				ResourceAllocation current = get(id);
+				if (current == null && this.waiting.contains(id)) {
+					return dismiss(unwait(id), CANCELLED, reason);
+				} else if (current == null) {
+					LOG.log(Level.WARNING, "attempt to terminate allocation ''{0}'' ignored, no such allocation available", id);
+					return false;
+				}
+				ResourceAllocation.Builder builder = ResourceAllocation.newBuilder(current);
+				switch (current.getState()) {
+					case REQUESTED:
+					case SCHEDULED:
+						builder.setState(CANCELLED);
+						break;
+					case ALLOCATED:
+						builder.setState(ABORTED);
+						break;
+					default:
+						return false;
+				}
+				return finalize(builder.build(), reason);
+		}
+	}
+
+	/**
+	 * Cancels or aborts all allocations and waiting requests that either hold
+	 * a resource with the given prefix or, if the selector starts with
+	 * {@code #}, share the given token. The termination is recorded as a
+	 * single decision, freed resources are reconsidered once all of them
+	 * have been terminated. Selectors that would match every resource are
+	 * refused.
+	 *
+	 * @param selector a resource prefix or {@code #token}
+	 * @param reason the reason
+	 * @return the number of terminated allocations
+	 * @throws IllegalArgumentException if the selector is empty or the root
+	 * prefix
+	 */
+	int terminateAll(String selector, String reason) {
+		boolean token = selector.startsWith("#");
+		String key = token ? selector.substring(1) : selector;
+		if (key.replace("/", "").isEmpty()) {
+			throw new IllegalArgumentException("refusing to terminate allocations matching '" + selector + "'");
+		}
+		ResourceAllocation.Builder incoming = ResourceAllocation.newBuilder().setId(selector).setState(CANCELLED).setDescription(reason);
+		if (!token) {
+			incoming.addResourceIds(key);
+		}
+		int[] terminated = new int[1];
+		synchronized (this.allocations) {
+			decided(incoming.buildPartial(), null, () -> {
+				Set<String> ids = token ? this.index.idsByToken(key) : this.index.idsByPrefix(key);
+				for (String id : ids) {
+					ResourceAllocation current = get(id);
+					if (current != null && matches(current, token, key) && terminate(id, reason)) {
+						terminated[0]++;
+					}
+				}
+				for (ResourceAllocation waiter : this.waiting.candidates(Collections.singletonList(token ? "" : key))) {
+					if (matches(waiter, token, key) && terminate(waiter.getId(), reason)) {
+						terminated[0]++;
+					}
+				}
+				return terminated[0] > 0;
+			});
+		}
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.log(Level.FINE, "Terminated {0} allocations matching ''{1}''", new Object[]{terminated[0], selector});
+		}
+		return terminated[0];
+	}
+
+	private static boolean matches(ResourceAllocation allocation, boolean token, String key) {
+		if (token) {
+			return key.equals(AllocationIndex.token(allocation.getId()));
+		}
+		for (String r : allocation.getResourceIdsList()) {
+			if (r.startsWith(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	synchronized static boolean sharedPrefix(List<String> one, List<String> two) {
 		boolean contains = false;
 		search:
@@ -401,107 +1339,313 @@ public class Allocations {
 
 	}
 
+	/**
+	 * Determines whether two allocations may hold the same resources at the
+	 * same time, i.e. if they share a token or if both are shared.
+	 *
+	 * @param stored a live allocation
+	 * @param allocation another allocation
+	 * @param shared whether the other allocation is shared
+	 * @return whether the allocations are compatible
+	 */
+	private boolean isCompatible(ResourceAllocation stored, ResourceAllocation allocation, boolean shared) {
+		return (shared && this.index.isShared(stored.getId())) || isPermitted(stored.getId(), allocation.getId());
+	}
+
+	private boolean isSibling(ResourceAllocation one, ResourceAllocation two) {
+		return !this.gang.isEmpty() && this.gang.contains(one.getId()) && this.gang.contains(two.getId());
+	}
+
+	/**
+	 * Finds all allocations that block the given one. Newly requested shared
+	 * allocations are additionally blocked by waiting exclusive requests of at
+	 * least the same priority, so that a steady stream of overlapping shared
+	 * allocations cannot starve them. Shared allocations that are refitted
+	 * keep their place. Only waiting requests are protected: scheduled
+	 * exclusive allocations are subject to the regular conflict rules, and
+	 * rejected ones are not known anymore. Waiting requests are looked up in
+	 * the wait list, which keeps its own resource index because they are not
+	 * live allocations.
+	 *
+	 * @param allocation the allocation
+	 * @param refit whether an existing allocation is refitted
+	 * @return the blocking allocations ordered by their end
+	 */
 	List<ResourceAllocation> getBlockers(ResourceAllocation allocation, boolean refit) {
 		synchronized (this.allocations) {
+				return blockers(this.allocations.values(), allocation, refit);
+		}
+	}
 
-				Map<String, ResourceAllocation> storedMap = new HashMap<>(this.allocations);
-				storedMap.remove(allocation.getId());
-
-				List<ResourceAllocation> blocking = new LinkedList<>();
-				for (ResourceAllocation stored : storedMap.values()) {
-					boolean permitted = isPermitted(stored.getId(), allocation.getId());
-					if (!permitted) {
-						boolean shared = sharedPrefix(stored.getResourceIdsList(), allocation.getResourceIdsList());
-						if (shared) {
-							if (stored.getPriority().compareTo(allocation.getPriority()) > 0) {
-								blocking.add(stored);
-							} else if (stored.getPriority().compareTo(allocation.getPriority()) == 0) {
-								if (refit || allocation.getInitiator().equals(SYSTEM)) {
-									blocking.add(stored);
-								}
-							}
+	private List<ResourceAllocation> blockers(Collection<ResourceAllocation> snapshot, ResourceAllocation allocation, boolean refit) {
+		List<ResourceAllocation> blocking = new LinkedList<>();
+		boolean mode = Tags.has(allocation, Tags.SHARED);
+		for (ResourceAllocation stored : snapshot) {
+			if (stored.getId().equals(allocation.getId())) {
+				continue;
+			}
+			boolean permitted = isCompatible(stored, allocation, mode);
+			if (!permitted) {
+				boolean shared = sharedPrefix(stored.getResourceIdsList(), allocation.getResourceIdsList());
+				if (shared) {
+					if (isSibling(stored, allocation)) {
+						blocking.add(stored);
+					} else if (stored.getPriority().compareTo(allocation.getPriority()) > 0) {
+						blocking.add(stored);
+					} else if (stored.getPriority().compareTo(allocation.getPriority()) == 0) {
+						if (refit || allocation.getInitiator().equals(SYSTEM)) {
+							blocking.add(stored);
 						}
 					}
 				}
+			}
+		}
 
-				blocking.removeIf(e -> e.getSlot().getEnd().getTime() < currentTimeInMicros());
-				blocking.sort((l, r) -> {
-					return (int) (l.getSlot().getEnd().getTime() - r.getSlot().getEnd().getTime());
-				});
-				return blocking;
-
+		if (!refit && mode) {
+			for (ResourceAllocation waiter : this.waiting.candidates(allocation.getResourceIdsList())) {
+				if (!waiter.getId().equals(allocation.getId()) && !this.waiting.isShared(waiter.getId())
+						&& waiter.getPriority().compareTo(allocation.getPriority()) >= 0) {
+					blocking.add(waiter);
+				}
+			}
 		}
+
+		blocking.removeIf(e -> e.getSlot().getEnd().getTime() < currentTimeInMicros());
+		blocking.sort((l, r) -> {
+			return (int) (l.getSlot().getEnd().getTime() - r.getSlot().getEnd().getTime());
+		});
+		return blocking;
 	}
 
 	List<ResourceAllocation> getAffected(ResourceAllocation allocation) {
 		synchronized (this.allocations) {
+				return affected(this.allocations.values(), allocation);
+		}
+	}
 
-				Map<String, ResourceAllocation> storedMap = new HashMap<>(this.allocations);
-				storedMap.remove(allocation.getId());
-
-				List<ResourceAllocation> affected = new LinkedList<>();
-				for (ResourceAllocation stored : storedMap.values()) {
-					boolean shared = sharedPrefix(stored.getResourceIdsList(), allocation.getResourceIdsList());
-					if (shared) {
-						if (stored.getPriority().compareTo(allocation.getPriority()) < 0) {
-							affected.add(stored);
-						} else if (stored.getPriority().compareTo(allocation.getPriority()) == 0) {
-							if (allocation.getInitiator().equals(HUMAN)) {
-								affected.add(stored);
-							}
-						}
+	private List<ResourceAllocation> affected(Collection<ResourceAllocation> snapshot, ResourceAllocation allocation) {
+		List<ResourceAllocation> affected = new LinkedList<>();
+		boolean mode = Tags.has(allocation, Tags.SHARED);
+		for (ResourceAllocation stored : snapshot) {
+			if (stored.getId().equals(allocation.getId())) {
+				continue;
+			}
+			boolean shared = !isCompatible(stored, allocation, mode) && !isSibling(stored, allocation) && sharedPrefix(stored.getResourceIdsList(), allocation.getResourceIdsList());
+			if (shared) {
+				if (stored.getPriority().compareTo(allocation.getPriority()) < 0) {
+					affected.add(stored);
+				} else if (stored.getPriority().compareTo(allocation.getPriority()) == 0) {
+					if (allocation.getInitiator().equals(HUMAN)) {
+						affected.add(stored);
 					}
 				}
-
-				affected.removeIf(e -> e.getSlot().getEnd().getTime() < currentTimeInMicros());
-				affected.sort((l, r) -> {
-					return (int) (l.getSlot().getEnd().getTime() - r.getSlot().getEnd().getTime());
-				});
-				return affected;
-
+			}
 		}
+
+		affected.removeIf(e -> e.getSlot().getEnd().getTime() < currentTimeInMicros());
+		affected.sort((l, r) -> {
+			return (int) (l.getSlot().getEnd().getTime() - r.getSlot().getEnd().getTime());
+		});
+		return affected;
 	}
 
 	Interval findSlot(ResourceAllocation allocation, boolean refit) {
 		synchronized (this.allocations) {
-				LOG.log(Level.FINE, "Fitting: {0}", shortString(allocation));
+				if (LOG.isLoggable(Level.FINE)) {
+					LOG.log(Level.FINE, "Fitting: {0}", shortString(allocation));
+				}
 				List<ResourceAllocation> blockers = getBlockers(allocation, refit);
-				if (!blockers.isEmpty()) {
-					List<Interval> times = blockers.stream().map(b -> b.getSlot()).collect(Collectors.toList());
-					Interval match = null;
-					if (allocation.getState().equals(ALLOCATED)) {
-						match = IntervalUtils.findRemaining(allocation.getSlot(), times);
-					} else {
-						switch (allocation.getPolicy()) {
-							case PRESERVE:
-								match = IntervalUtils.findComplete(allocation.getSlot(), allocation.hasConstraints() ? allocation.getConstraints() : allocation.getSlot(), times);
-								break;
-							case FIRST:
-								match = IntervalUtils.findFirst(allocation.getSlot(), allocation.hasConstraints() ? allocation.getConstraints() : allocation.getSlot(), times);
-								break;
-							case MAXIMUM:
-								match = IntervalUtils.findMax(allocation.getSlot(), allocation.hasConstraints() ? allocation.getConstraints() : allocation.getSlot(), times);
-								break;
-							default:
-								LOG.log(Level.INFO, "Requested allocation failed (unsupported policy): {0}", shortString(allocation));
-								break;
-						}
+				if (!refit) {
+					for (ResourceAllocation b : blockers) {
+						this.decision.blocker(b.getId());
 					}
-					return match;
-				} else if (allocation.getState().equals(ALLOCATED)) {
-					return IntervalUtils.includeNow(allocation.getSlot());
-				} else {
-					return allocation.getSlot();
 				}
+				return fit(allocation, blockers, refit ? null : this.allocations.values());
+		}
+	}
+
+	/**
+	 * Fits an allocation between its blockers according to its policy.
+	 *
+	 * @param allocation the allocation
+	 * @param blockers the blocking allocations
+	 * @param live the live allocations to consider for cost-aware selection,
+	 * or {@code null} to use the slot chosen by the policy
+	 * @return the slot, or {@code null} if there is none
+	 */
+	private Interval fit(ResourceAllocation allocation, List<ResourceAllocation> blockers, Collection<ResourceAllocation> live) {
+		List<Interval> times = this.capacities.profile(allocation, blockers);
+		if (!times.isEmpty()) {
+			Interval match = null;
+			if (allocation.getState().equals(ALLOCATED)) {
+				match = IntervalUtils.findRemaining(allocation.getSlot(), times);
+			} else {
+				match = place(allocation, times);
+			}
+			if (match != null && live != null && this.costAware) {
+				match = cheapest(allocation, times, match, live);
+			}
+			return match;
+		} else if (allocation.getState().equals(ALLOCATED)) {
+			return IntervalUtils.includeNow(allocation.getSlot());
+		} else if (live != null && this.costAware) {
+			return cheapest(allocation, times, allocation.getSlot(), live);
+		} else {
+			return allocation.getSlot();
+		}
+	}
+
+	private static Interval place(ResourceAllocation allocation, List<Interval> times) {
+		Interval window = allocation.hasConstraints() ? allocation.getConstraints() : allocation.getSlot();
+		switch (allocation.getPolicy()) {
+			case PRESERVE:
+				return IntervalUtils.findComplete(allocation.getSlot(), window, times);
+			case FIRST:
+				return IntervalUtils.findFirst(allocation.getSlot(), window, times);
+			case MAXIMUM:
+				return IntervalUtils.findMax(allocation.getSlot(), window, times);
+			default:
+				if (LOG.isLoggable(Level.INFO)) {
+					LOG.log(Level.INFO, "Requested allocation failed (unsupported policy): {0}", shortString(allocation));
+				}
+				return null;
+		}
+	}
+
+	/**
+	 * Looks for a slot of the same length as the one chosen by the policy
+	 * that displaces cheaper allocations. The most expensive allocations
+	 * displaced by the current choice are added to the blocked times one by
+	 * one, an alternative is kept if the policy still finds an equally long
+	 * slot that is cheaper. Only {@code PRESERVE} and {@code MAXIMUM} are
+	 * considered, {@code FIRST} always takes the earliest slot.
+	 *
+	 * @param allocation the allocation
+	 * @param times the blocked times
+	 * @param match the slot chosen by the policy
+	 * @param live the live allocations
+	 * @return the cheapest slot found
+	 */
+	private Interval cheapest(ResourceAllocation allocation, List<Interval> times, Interval match, Collection<ResourceAllocation> live) {
+		switch (allocation.getPolicy()) {
+			case PRESERVE:
+			case MAXIMUM:
+				break;
+			default:
+				return match;
+		}
+		List<ResourceAllocation> displaceable = affected(live, allocation);
+		long best = cost(match, displaceable);
+		if (best == 0) {
+			return match;
+		}
+		long duration = match.getEnd().getTime() - match.getBegin().getTime();
+		List<ResourceAllocation> displaced = new ArrayList<>();
+		for (ResourceAllocation a : displaceable) {
+			if (overlaps(a.getSlot(), match)) {
+				displaced.add(a);
+			}
+		}
+		displaced.sort((l, r) -> Long.compare(weight(r), weight(l)));
+		List<Interval> avoid = new ArrayList<>(times);
+		for (ResourceAllocation a : displaced.subList(0, Math.min(displaced.size(), MAX_AVOIDED))) {
+			avoid.add(a.getSlot());
+			avoid.sort((l, r) -> Long.compare(l.getEnd().getTime(), r.getEnd().getTime()));
+			Interval alternative = place(allocation, avoid);
+			long c;
+			if (alternative != null && alternative.getEnd().getTime() - alternative.getBegin().getTime() == duration
+					&& (c = cost(alternative, displaceable)) < best) {
+				best = c;
+				match = alternative;
+				if (best == 0) {
+					break;
+				}
+			} else {
+				avoid.remove(a.getSlot());
+			}
 		}
+		return match;
+	}
+
+	private static long cost(Interval slot, List<ResourceAllocation> displaceable) {
+		long cost = 0;
+		for (ResourceAllocation a : displaceable) {
+			if (overlaps(a.getSlot(), slot)) {
+				cost += weight(a);
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * @param a an allocation that may be displaced
+	 * @return the cost of displacing it, higher priorities and running
+	 * allocations are more expensive
+	 */
+	private static long weight(ResourceAllocation a) {
+		return (a.getPriority().ordinal() + 1) * (a.getState().equals(ALLOCATED) ? 2 : 1);
+	}
+
+	private static boolean overlaps(Interval one, Interval two) {
+		return one.getBegin().getTime() < two.getEnd().getTime() && one.getEnd().getTime() > two.getBegin().getTime();
+	}
+
+	/**
+	 * Determines the slot that a hypothetical allocation would be given and
+	 * the allocations blocking it. The request is evaluated against a
+	 * snapshot of the live allocations without taking the allocation lock,
+	 * nothing is stored, published or preempted.
+	 *
+	 * @param allocation the hypothetical allocation
+	 * @return the outcome of the probe
+	 */
+	SlotProbe probe(ResourceAllocation allocation) {
+		ResourceAllocation hypothetical = ResourceAllocation.newBuilder(allocation).setState(REQUESTED).build();
+		List<ResourceAllocation> snapshot = new ArrayList<>(this.allocations.values());
+		List<ResourceAllocation> blockers = blockers(snapshot, hypothetical, false);
+		Interval slot = fit(hypothetical, blockers, snapshot);
+		if (slot != null && slot.getEnd().getTime() < currentTimeInMicros()) {
+			slot = null;
+		}
+		return new SlotProbe(slot, blockers);
 	}
 
 	void updateAffected(ResourceAllocation allocation, String reason) {
+		updateAffected(Collections.singletonList(allocation), reason);
+	}
+
+	/**
+	 * Refits all allocations affected by any of the given ones in a single
+	 * cascade, e.g. after a gang has been placed.
+	 *
+	 * @param allocations the allocations that have been placed
+	 * @param reason the reason given to affected allocations
+	 */
+	void updateAffected(List<ResourceAllocation> allocations, String reason) {
 		synchronized (this.allocations) {
-				LOG.log(Level.FINE, "Updating allocations affected by: {0}", shortString(allocation));
-				List<ResourceAllocation> affected = getAffected(allocation);
+				Map<String, ResourceAllocation> union = new LinkedHashMap<>();
+				for (ResourceAllocation allocation : allocations) {
+					if (LOG.isLoggable(Level.FINE)) {
+						LOG.log(Level.FINE, "Updating allocations affected by: {0}", shortString(allocation));
+					}
+					for (ResourceAllocation a : getAffected(allocation)) {
+						union.putIfAbsent(a.getId(), a);
+					}
+				}
+				List<ResourceAllocation> affected = new ArrayList<>(union.values());
+				if (allocations.size() > 1) {
+					affected.sort((l, r) -> {
+						return (int) (l.getSlot().getEnd().getTime() - r.getSlot().getEnd().getTime());
+					});
+				}
+				this.metrics.cascade.record(affected.size());
+				long displaced = 0;
+				long cost = 0;
 				for (ResourceAllocation running : affected) {
-					LOG.log(Level.FINER, "Updating: {0}", shortString(running));
+					this.decision.affected(running.getId());
+					if (LOG.isLoggable(Level.FINER)) {
+						LOG.log(Level.FINER, "Updating: {0}", shortString(running));
+					}
 					Interval mod = findSlot(running, true);
 					ResourceAllocation.Builder builder = ResourceAllocation.newBuilder(running);
 					if (mod == null) {
@@ -514,12 +1658,23 @@ public class Allocations {
 								builder.setState(ABORTED);
 								break;
 						}
+						this.metrics.occupancy.preempted(running);
+						displaced++;
+						cost += weight(running);
 						finalize(builder.build(), reason);
 					} else if (!mod.equals(running.getSlot())) {
+						this.metrics.occupancy.preempted(running);
+						displaced++;
+						cost += weight(running);
+						if (!this.shortened.contains(running.getId())) {
+							this.shortened.add(running);
+						}
 						builder.setSlot(mod);
 						update(builder.build(), reason, false);
 					}
 				}
+				this.metrics.displaced.record(displaced);
+				this.metrics.displacement.record(cost);
 		}
 	}
 }
@@ -24,6 +24,10 @@ package de.citec.csra.allocation.srv;
 public class Allocator {
 
 	public static void main(String[] args) throws Exception {
+		if (Boolean.parseBoolean(System.getenv("ALLOCATION_ASYNC_LOG"))) {
+			AsyncHandler.install();
+		}
+		DecisionRecorder.getInstance().handleSignal();
 		AllocationServer a = AllocationServer.getInstance();
 		a.activate();
 		a.listen();
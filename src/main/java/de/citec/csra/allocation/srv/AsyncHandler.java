@@ -0,0 +1,151 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Logging handler that hands records to a bounded ring buffer and writes
+ * them to its target handlers from a background thread.
+ *
+ * Publishing a record never waits for console or file I/O: if the buffer is
+ * full, the record is dropped and counted. The handler can be configured in
+ * {@code logging.properties} via
+ * {@code de.citec.csra.allocation.srv.AsyncHandler.capacity} (default 8192),
+ * in which case it writes to a {@link ConsoleHandler}, or be installed in
+ * front of the current root handlers with {@link #install()}.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class AsyncHandler extends Handler {
+
+	private final static int CAPACITY = 8192;
+
+	private final BlockingQueue<LogRecord> buffer;
+	private final List<Handler> targets;
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong total = Metrics.getInstance().counter("log_dropped_total");
+	private final Thread writer;
+	private volatile boolean open = true;
+
+	public AsyncHandler() {
+		this(capacity(), new ConsoleHandler());
+	}
+
+	public AsyncHandler(int capacity, Handler... targets) {
+		this.buffer = new ArrayBlockingQueue<>(capacity);
+		this.targets = Arrays.asList(targets);
+		this.writer = new Thread(this::drain, "allocation-log-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	private static int capacity() {
+		String value = LogManager.getLogManager().getProperty(AsyncHandler.class.getName() + ".capacity");
+		try {
+			return value != null ? Integer.parseInt(value.trim()) : CAPACITY;
+		} catch (NumberFormatException ex) {
+			return CAPACITY;
+		}
+	}
+
+	/**
+	 * Replaces the handlers of the root logger by a single asynchronous
+	 * handler that forwards to them.
+	 */
+	public static void install() {
+		Logger root = LogManager.getLogManager().getLogger("");
+		Handler[] current = root.getHandlers();
+		for (Handler h : current) {
+			if (h instanceof AsyncHandler) {
+				return;
+			}
+		}
+		AsyncHandler async = new AsyncHandler(capacity(), current);
+		for (Handler h : current) {
+			root.removeHandler(h);
+		}
+		root.addHandler(async);
+	}
+
+	@Override
+	public void publish(LogRecord record) {
+		if (!this.open || !isLoggable(record)) {
+			return;
+		}
+//		infer the caller on the logging thread, not the writer thread
+		record.getSourceClassName();
+		if (!this.buffer.offer(record)) {
+			this.dropped.incrementAndGet();
+			this.total.incrementAndGet();
+		}
+	}
+
+	private void drain() {
+		try {
+			while (this.open || !this.buffer.isEmpty()) {
+				LogRecord record = this.buffer.poll(100, TimeUnit.MILLISECONDS);
+				if (record != null) {
+					for (Handler h : this.targets) {
+						h.publish(record);
+					}
+				}
+				long lost = this.dropped.getAndSet(0);
+				if (lost > 0) {
+					LogRecord warning = new LogRecord(Level.WARNING, "Log buffer overflow, dropped " + lost + " records");
+					for (Handler h : this.targets) {
+						h.publish(warning);
+					}
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void flush() {
+		for (Handler h : this.targets) {
+			h.flush();
+		}
+	}
+
+	@Override
+	public void close() throws SecurityException {
+		this.open = false;
+		try {
+			this.writer.join(1000);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		for (Handler h : this.targets) {
+			h.close();
+		}
+	}
+}
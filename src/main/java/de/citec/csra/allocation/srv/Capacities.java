@@ -0,0 +1,184 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
+
+/**
+ * Resources that can be used by a limited number of allocations at the same
+ * time. Capacities are declared per resource prefix in a properties file
+ * given by {@code ALLOCATION_CAPACITIES}, e.g. {@code /speaker/mixer/=4}, or
+ * at runtime. A resource belongs to the pool of the longest declared prefix
+ * it starts with, all other resources remain exclusive.
+ *
+ * Allocations that overlap only on resources of the same pool block each
+ * other only where their combined demand reaches the capacity of the pool.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class Capacities {
+
+	private final static Logger LOG = Logger.getLogger(Capacities.class.getName());
+	private final static String FILEVAR = "ALLOCATION_CAPACITIES";
+
+	private static Capacities instance;
+	private final ConcurrentSkipListMap<String, Integer> capacities = new ConcurrentSkipListMap<>();
+
+	private Capacities() {
+		if (System.getenv().containsKey(FILEVAR)) {
+			String file = System.getenv(FILEVAR);
+			try (InputStream in = new FileInputStream(file)) {
+				Properties p = new Properties();
+				p.load(in);
+				for (String prefix : p.stringPropertyNames()) {
+					setCapacity(prefix, Integer.parseInt(p.getProperty(prefix).trim()));
+				}
+				LOG.log(Level.INFO, "Loaded {0} resource capacities from ''{1}''.", new Object[]{this.capacities.size(), file});
+			} catch (IOException | IllegalArgumentException ex) {
+				LOG.log(Level.WARNING, "Could not load resource capacities from '" + file + "', all resources are exclusive", ex);
+				this.capacities.clear();
+			}
+		}
+	}
+
+	public synchronized static Capacities getInstance() {
+		if (instance == null) {
+			instance = new Capacities();
+		}
+		return instance;
+	}
+
+	/**
+	 * Declares the capacity of all resources starting with the given prefix.
+	 *
+	 * @param prefix the resource prefix
+	 * @param capacity the number of concurrent allocations, a capacity of one
+	 * or less makes the resources exclusive again
+	 */
+	public void setCapacity(String prefix, int capacity) {
+		if (capacity > 1) {
+			this.capacities.put(prefix, capacity);
+		} else {
+			this.capacities.remove(prefix);
+		}
+	}
+
+	String pool(String resource) {
+		for (Map.Entry<String, Integer> e = this.capacities.floorEntry(resource); e != null; e = this.capacities.lowerEntry(e.getKey())) {
+			if (resource.startsWith(e.getKey())) {
+				return e.getKey();
+			}
+			if (e.getKey().isEmpty() || e.getKey().charAt(0) != resource.charAt(0)) {
+				break;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Determines the pool in which two allocations overlap.
+	 *
+	 * @return the common pool, or {@code null} if the allocations overlap on
+	 * any exclusive resource or on different pools
+	 */
+	private String sharedPool(ResourceAllocation one, ResourceAllocation two) {
+		String shared = null;
+		for (String a : one.getResourceIdsList()) {
+			for (String b : two.getResourceIdsList()) {
+				if (b.startsWith(a) || a.startsWith(b)) {
+					String pa = pool(a);
+					if (pa == null || !pa.equals(pool(b)) || (shared != null && !shared.equals(pa))) {
+						return null;
+					}
+					shared = pa;
+				}
+			}
+		}
+		return shared;
+	}
+
+	private static Interval interval(long begin, long end) {
+		return Interval.newBuilder().
+				setBegin(Timestamp.newBuilder().setTime(begin)).
+				setEnd(Timestamp.newBuilder().setTime(end)).build();
+	}
+
+	/**
+	 * Determines the times during which the given allocation is blocked.
+	 * Blockers on exclusive resources block during their whole slot, blockers
+	 * sharing a pool only while the pool is saturated.
+	 *
+	 * @param allocation the allocation to fit
+	 * @param blockers the allocations blocking it
+	 * @return the blocked times ordered by their end
+	 */
+	List<Interval> profile(ResourceAllocation allocation, List<ResourceAllocation> blockers) {
+		List<Interval> times = new ArrayList<>(blockers.size());
+		if (this.capacities.isEmpty()) {
+			for (ResourceAllocation b : blockers) {
+				times.add(b.getSlot());
+			}
+			return times;
+		}
+
+		Map<String, List<Interval>> pools = new HashMap<>();
+		for (ResourceAllocation b : blockers) {
+			String pool = sharedPool(allocation, b);
+			if (pool == null) {
+				times.add(b.getSlot());
+			} else {
+				pools.computeIfAbsent(pool, k -> new ArrayList<>()).add(b.getSlot());
+			}
+		}
+
+		for (Map.Entry<String, List<Interval>> e : pools.entrySet()) {
+			int capacity = this.capacities.getOrDefault(e.getKey(), 1);
+			List<long[]> changes = new ArrayList<>();
+			for (Interval i : e.getValue()) {
+				changes.add(new long[]{i.getBegin().getTime(), 1});
+				changes.add(new long[]{i.getEnd().getTime(), -1});
+			}
+			changes.sort((l, r) -> l[0] != r[0] ? Long.compare(l[0], r[0]) : Long.compare(l[1], r[1]));
+			int demand = 0;
+			long saturated = 0;
+			for (long[] c : changes) {
+				demand += c[1];
+				if (c[1] > 0 && demand == capacity) {
+					saturated = c[0];
+				} else if (c[1] < 0 && demand == capacity - 1 && c[0] > saturated) {
+					times.add(interval(saturated, c[0]));
+				}
+			}
+		}
+		times.sort((l, r) -> Long.compare(l.getEnd().getTime(), r.getEnd().getTime()));
+		return times;
+	}
+}
@@ -0,0 +1,124 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rsb.Scope;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+
+/**
+ * Support for the compact event mode.
+ *
+ * Complete allocations are always published on the allocation scope. If a
+ * compact scope is configured by exporting {@code SCOPE_ALLOCATION_COMPACT},
+ * every event is additionally published there, and clients opt into compact
+ * events by listening on that scope instead. On the compact scope, the
+ * complete {@link ResourceAllocation} is only published when an allocation
+ * is announced for the first time and when a client asks for it by sending
+ * the allocation in state {@code REQUESTED} again. All other state changes
+ * are published as compact events that omit the resource ids and
+ * constraints and carry the description {@value #MARKER}. Clients detect
+ * compact events with {@link #isCompact(ResourceAllocation)} and apply them
+ * to their last snapshot with
+ * {@link #merge(ResourceAllocation, ResourceAllocation)}.
+ *
+ * The compact scope must not be nested in the allocation scope, otherwise
+ * listeners on the allocation scope would receive both kinds of events.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class CompactEvents {
+
+	private final static Logger LOG = Logger.getLogger(CompactEvents.class.getName());
+	private final static String SCOPEVAR = "SCOPE_ALLOCATION_COMPACT";
+	public final static String MARKER = "[compact]";
+
+	private static Boolean enabled;
+	private static String scope;
+
+	public synchronized static boolean isEnabled() {
+		if (enabled == null) {
+			scope = System.getenv(SCOPEVAR);
+			enabled = scope != null && !scope.isEmpty();
+			if (enabled) {
+				Scope allocation = new Scope(AllocationServer.getScope());
+				Scope compact = new Scope(scope);
+				if (compact.equals(allocation) || compact.isSubScopeOf(allocation)) {
+					LOG.log(Level.WARNING, "ignoring compact scope ''{0}'' nested in allocation scope ''{1}''", new Object[]{scope, allocation});
+					enabled = false;
+				} else {
+					LOG.log(Level.INFO, "publishing compact allocation events at ''{0}''", scope);
+				}
+			}
+		}
+		return enabled;
+	}
+
+	/**
+	 * @return the scope of compact events, or {@code null} if compact events
+	 * are disabled
+	 */
+	public static String getScope() {
+		return isEnabled() ? scope : null;
+	}
+
+	/**
+	 * Strips an allocation down to the values that change during its
+	 * lifetime.
+	 *
+	 * @param allocation the complete allocation
+	 * @return the compact event
+	 */
+	public static ResourceAllocation compact(ResourceAllocation allocation) {
+		return ResourceAllocation.newBuilder(allocation).
+				setDescription(MARKER).
+				clearResourceIds().
+				clearConstraints().
+				build();
+	}
+
+	/**
+	 * Checks whether the given allocation is a compact event, i.e. carries
+	 * the compact marker instead of a description and no resource ids.
+	 *
+	 * @param allocation the received allocation
+	 * @return whether the allocation is a compact event
+	 */
+	public static boolean isCompact(ResourceAllocation allocation) {
+		return allocation.getResourceIdsCount() == 0 && MARKER.equals(allocation.getDescription());
+	}
+
+	/**
+	 * Applies a compact event to the last complete allocation with the same
+	 * id.
+	 *
+	 * @param snapshot the last complete allocation
+	 * @param event the compact event
+	 * @return the updated complete allocation
+	 */
+	public static ResourceAllocation merge(ResourceAllocation snapshot, ResourceAllocation event) {
+		if (!isCompact(event)) {
+			return event;
+		}
+		return ResourceAllocation.newBuilder(snapshot).
+				setState(event.getState()).
+				setSlot(event.getSlot()).
+				build();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import static de.citec.csra.rst.util.IntervalUtils.currentTimeInMicros;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Actions that are due at a point in time, e.g. dismissing a waiting request
+ * whose window has passed. Deadlines are identified by a key, scheduling a
+ * key again replaces its previous deadline.
+ *
+ * All deadlines share a single delay queue and thread. Cancelled and
+ * replaced deadlines are discarded when they are taken from the queue.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+class Deadlines {
+
+	private final static Logger LOG = Logger.getLogger(Deadlines.class.getName());
+
+	private static class Deadline implements Delayed {
+
+		final String key;
+		final long time;
+		final Runnable action;
+
+		Deadline(String key, long time, Runnable action) {
+			this.key = key;
+			this.time = time;
+			this.action = action;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(this.time - currentTimeInMicros(), TimeUnit.MICROSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			return Long.compare(this.time, ((Deadline) o).time);
+		}
+	}
+
+	private final Map<String, Deadline> deadlines = new ConcurrentHashMap<>();
+	private final DelayQueue<Deadline> queue = new DelayQueue<>();
+	private Thread thread;
+
+	/**
+	 * Schedules an action, replacing any deadline with the same key.
+	 *
+	 * @param key the key of the deadline
+	 * @param time the time in microseconds at which the action is due
+	 * @param action the action, invoked from the deadline thread
+	 */
+	void schedule(String key, long time, Runnable action) {
+		Deadline deadline = new Deadline(key, time, action);
+		this.deadlines.put(key, deadline);
+		start();
+		this.queue.add(deadline);
+	}
+
+	void cancel(String key) {
+		this.deadlines.remove(key);
+	}
+
+	int size() {
+		return this.deadlines.size();
+	}
+
+	private synchronized void start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this::run, "allocation-deadlines");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				Deadline deadline = this.queue.take();
+				if (this.deadlines.remove(deadline.key, deadline)) {
+					try {
+						deadline.action.run();
+					} catch (RuntimeException ex) {
+						LOG.log(Level.SEVERE, "Could not perform action due for '" + deadline.key + "'", ex);
+					}
+				}
+			}
+		} catch (InterruptedException ex) {
+			LOG.log(Level.FINE, "Deadline thread interrupted, deadlines are no longer enforced");
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import rst.timing.IntervalType.Interval;
+
+/**
+ * Scratch record of the decision that is currently taken by
+ * {@link Allocations}.
+ *
+ * A single instance is reused for all decisions and only accessed while
+ * holding the allocation lock.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+class Decision {
+
+	final static int MAX_IDS = 8;
+
+	ResourceAllocation incoming;
+	State previous;
+	Interval chosen;
+	int blockers;
+	int cascade;
+	final String[] blockerIds = new String[MAX_IDS];
+	final String[] affectedIds = new String[MAX_IDS];
+	Object event;
+
+	void reset(ResourceAllocation incoming, State previous) {
+		this.incoming = incoming;
+		this.previous = previous;
+		this.chosen = null;
+		this.blockers = 0;
+		this.cascade = 0;
+		this.event = null;
+	}
+
+	void blocker(String id) {
+		if (this.blockers < MAX_IDS) {
+			this.blockerIds[this.blockers] = id;
+		}
+		this.blockers++;
+	}
+
+	void affected(String id) {
+		if (this.cascade < MAX_IDS) {
+			this.affectedIds[this.cascade] = id;
+		}
+		this.cascade++;
+	}
+}
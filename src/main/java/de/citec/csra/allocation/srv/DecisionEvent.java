@@ -0,0 +1,89 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning a client-requested decision in
+ * {@link Allocations}.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+@Name("de.citec.csra.allocation.Decision")
+@Label("Allocation Decision")
+@Category("Allocation")
+@Description("Handling of a client-requested allocation state transition")
+class DecisionEvent extends Event {
+
+	private final static EventType TYPE = EventType.getEventType(DecisionEvent.class);
+
+	@Label("Id")
+	String id;
+
+	@Label("Previous State")
+	String previous;
+
+	@Label("Requested State")
+	String requested;
+
+	@Label("Policy")
+	String policy;
+
+	@Label("Priority")
+	String priority;
+
+	@Label("Blockers")
+	int blockers;
+
+	@Label("Cascade Size")
+	int cascade;
+
+	@Label("Successful")
+	boolean successful;
+
+	static DecisionEvent start() {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		DecisionEvent e = new DecisionEvent();
+		e.begin();
+		return e;
+	}
+
+	static void finish(Decision decision, boolean result) {
+		DecisionEvent e = (DecisionEvent) decision.event;
+		e.end();
+		if (e.shouldCommit()) {
+			e.id = decision.incoming.getId();
+			e.previous = String.valueOf(decision.previous);
+			e.requested = decision.incoming.getState().name();
+			e.policy = decision.incoming.getPolicy().name();
+			e.priority = decision.incoming.getPriority().name();
+			e.blockers = decision.blockers;
+			e.cascade = decision.cascade;
+			e.successful = result;
+			e.commit();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import static de.citec.csra.rst.util.IntervalUtils.currentTimeInMicros;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ring buffer of the most recent decisions taken by {@link Allocations}.
+ *
+ * All entries are allocated up front and overwritten in place, recording a
+ * decision only copies primitive values and references to existing strings.
+ * The buffer size is given by {@code ALLOCATION_DECISIONS} (default 1024).
+ * The content can be written to a new file with {@link #dump()}, which is
+ * available via the {@code dump} method of the {@link QueryServer} and,
+ * after {@link #handleSignal()}, via the signal given by
+ * {@code ALLOCATION_DUMP_SIGNAL} (default {@code USR2}). Files are created
+ * in the directory given by {@code ALLOCATION_DUMP_DIR}, or in the temporary
+ * directory.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class DecisionRecorder {
+
+	private final static Logger LOG = Logger.getLogger(DecisionRecorder.class.getName());
+	private final static String SIZEVAR = "ALLOCATION_DECISIONS";
+	private final static String SIGNALVAR = "ALLOCATION_DUMP_SIGNAL";
+	private final static String DIRVAR = "ALLOCATION_DUMP_DIR";
+	private final static int SIZE = 1024;
+
+	private static DecisionRecorder instance;
+
+	private final Entry[] entries;
+	private long next = 0;
+
+	private static class Entry {
+
+		long time;
+		long duration;
+		String id;
+		String previous;
+		String requested;
+		String policy;
+		String priority;
+		long requestedBegin;
+		long requestedEnd;
+		long chosenBegin;
+		long chosenEnd;
+		boolean result;
+		int blockers;
+		int cascade;
+		final String[] blockerIds = new String[Decision.MAX_IDS];
+		final String[] affectedIds = new String[Decision.MAX_IDS];
+	}
+
+	private DecisionRecorder(int size) {
+		this.entries = new Entry[size];
+		for (int i = 0; i < size; i++) {
+			this.entries[i] = new Entry();
+		}
+	}
+
+	public synchronized static DecisionRecorder getInstance() {
+		if (instance == null) {
+			int size = SIZE;
+			if (System.getenv().containsKey(SIZEVAR)) {
+				try {
+					size = Math.max(1, Integer.parseInt(System.getenv(SIZEVAR)));
+				} catch (NumberFormatException ex) {
+					LOG.log(Level.WARNING, "Illegal decision buffer size ''{0}'', using {1}", new Object[]{System.getenv(SIZEVAR), SIZE});
+				}
+			}
+			instance = new DecisionRecorder(size);
+		}
+		return instance;
+	}
+
+	synchronized void record(Decision decision, boolean result, long duration) {
+		Entry e = this.entries[(int) (this.next++ % this.entries.length)];
+		e.time = currentTimeInMicros();
+		e.duration = duration / 1000;
+		e.id = decision.incoming.getId();
+		e.previous = decision.previous != null ? decision.previous.name() : null;
+		e.requested = decision.incoming.getState().name();
+		e.policy = decision.incoming.getPolicy().name();
+		e.priority = decision.incoming.getPriority().name();
+		e.requestedBegin = decision.incoming.getSlot().getBegin().getTime();
+		e.requestedEnd = decision.incoming.getSlot().getEnd().getTime();
+		e.chosenBegin = decision.chosen != null ? decision.chosen.getBegin().getTime() : -1;
+		e.chosenEnd = decision.chosen != null ? decision.chosen.getEnd().getTime() : -1;
+		e.result = result;
+		e.blockers = decision.blockers;
+		e.cascade = decision.cascade;
+		System.arraycopy(decision.blockerIds, 0, e.blockerIds, 0, Math.min(decision.blockers, Decision.MAX_IDS));
+		System.arraycopy(decision.affectedIds, 0, e.affectedIds, 0, Math.min(decision.cascade, Decision.MAX_IDS));
+	}
+
+	/**
+	 * Writes all recorded decisions, oldest first, to a new file in the dump
+	 * directory.
+	 *
+	 * @return the path of the written file
+	 * @throws IOException if the file cannot be written
+	 */
+	public String dump() throws IOException {
+		List<String> lines = new ArrayList<>(this.entries.length);
+		synchronized (this) {
+			long first = Math.max(0, this.next - this.entries.length);
+			for (long n = first; n < this.next; n++) {
+				Entry e = this.entries[(int) (n % this.entries.length)];
+				lines.add(e.time + " " + e.duration + " " + e.id + " " + e.previous + " " + e.requested + " " + e.policy + " " + e.priority
+						+ " [" + e.requestedBegin + "," + e.requestedEnd + "]"
+						+ (e.chosenBegin < 0 ? " -" : " [" + e.chosenBegin + "," + e.chosenEnd + "]")
+						+ " " + (e.result ? "ok" : "failed")
+						+ " " + ids(e.blockerIds, e.blockers)
+						+ " " + ids(e.affectedIds, e.cascade));
+			}
+		}
+		String dir = System.getenv(DIRVAR);
+		File file = File.createTempFile("allocation-decisions-", ".log", (dir == null || dir.isEmpty()) ? null : new File(dir));
+		try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+			out.println("# time duration_us id previous requested policy priority requested_slot chosen_slot result blockers affected");
+			for (String line : lines) {
+				out.println(line);
+			}
+		}
+		LOG.log(Level.INFO, "Dumped recent allocation decisions to ''{0}''", file.getAbsolutePath());
+		return file.getAbsolutePath();
+	}
+
+	private static String ids(String[] ids, int count) {
+		StringBuilder b = new StringBuilder().append(count).append('{');
+		for (int i = 0; i < Math.min(count, ids.length); i++) {
+			if (i > 0) {
+				b.append(',');
+			}
+			b.append(ids[i]);
+		}
+		if (count > ids.length) {
+			b.append(",..");
+		}
+		return b.append('}').toString();
+	}
+
+	/**
+	 * Installs a signal handler that dumps the recorded decisions to a new
+	 * file. Signals are not part of the public Java API, so the handler is
+	 * installed reflectively and skipped on runtimes without
+	 * {@code sun.misc.Signal}.
+	 */
+	public void handleSignal() {
+		String name = System.getenv().getOrDefault(SIGNALVAR, "USR2");
+		try {
+			Class<?> signal = Class.forName("sun.misc.Signal");
+			Class<?> handler = Class.forName("sun.misc.SignalHandler");
+			InvocationHandler dump = (proxy, method, args) -> {
+				if (method.getDeclaringClass() == Object.class) {
+					return method.invoke(this, args);
+				}
+				try {
+					dump();
+				} catch (IOException ex) {
+					LOG.log(Level.WARNING, "Could not dump allocation decisions", ex);
+				}
+				return null;
+			};
+			Object h = Proxy.newProxyInstance(handler.getClassLoader(), new Class<?>[]{handler}, dump);
+			signal.getMethod("handle", signal, handler).invoke(null, signal.getConstructor(String.class).newInstance(name), h);
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			LOG.log(Level.WARNING, "Could not install handler for signal ''{0}'': {1}", new Object[]{name, ex});
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+
+/**
+ * Entry point for emitting Java Flight Recorder events.
+ *
+ * The event classes are only touched if the running JVM provides JFR, so
+ * the server still runs on JVMs without it. Events are only created while
+ * a recording has them enabled.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+final class FlightEvents {
+
+	private final static Logger LOG = Logger.getLogger(FlightEvents.class.getName());
+	private final static boolean AVAILABLE = available();
+
+	private FlightEvents() {
+	}
+
+	private static boolean available() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException | LinkageError ex) {
+			LOG.log(Level.CONFIG, "Flight recorder not available, events disabled");
+			return false;
+		}
+	}
+
+	static void begin(Decision decision) {
+		if (AVAILABLE) {
+			decision.event = DecisionEvent.start();
+		}
+	}
+
+	static void commit(Decision decision, boolean result) {
+		if (AVAILABLE && decision.event != null) {
+			DecisionEvent.finish(decision, result);
+		}
+	}
+
+	static void transition(String id, State state, long scheduled, long actual) {
+		if (AVAILABLE) {
+			TransitionEvent.emit(id, state, scheduled, actual);
+		}
+	}
+}
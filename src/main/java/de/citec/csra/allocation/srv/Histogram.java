@@ -0,0 +1,129 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram with logarithmic buckets that are linearly
+ * subdivided, similar to an HDR histogram.
+ *
+ * Every power of two is split into 16 sub-buckets, so recorded values are
+ * kept with a relative error below 1/16. The bucket array is allocated once,
+ * recording a value neither allocates nor locks.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class Histogram {
+
+	private final static int SUB_BITS = 5;
+	private final static int HALF = 1 << (SUB_BITS - 1);
+	private final static int BUCKETS = (64 - SUB_BITS + 1) * HALF;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	static int index(long value) {
+		if (value < 2 * HALF) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		return shift * HALF + (int) (value >>> shift);
+	}
+
+	static long upper(int index) {
+		if (index < 2 * HALF) {
+			return index;
+		}
+		int shift = index / HALF - 1;
+		long sub = index % HALF + HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * Records a single value. Negative values are recorded as zero.
+	 *
+	 * @param value the value to record
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		this.counts.incrementAndGet(index(value));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(value);
+		long m;
+		while (value > (m = this.max.get())) {
+			if (this.max.compareAndSet(m, value)) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	public long getSum() {
+		return this.sum.get();
+	}
+
+	public long getMax() {
+		return this.max.get();
+	}
+
+	public double getMean() {
+		long c = getCount();
+		return c == 0 ? 0 : (double) getSum() / c;
+	}
+
+	/**
+	 * Estimates the value at the given percentile as the upper bound of the
+	 * bucket that contains it.
+	 *
+	 * @param percentile the percentile between 0 and 100
+	 * @return the estimated value
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = getCount();
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= target) {
+				return Math.min(upper(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+		this.count.set(0);
+		this.sum.set(0);
+		this.max.set(0);
+	}
+}
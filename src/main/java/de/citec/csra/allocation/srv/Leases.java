@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Leases of allocations requested with a {@code [lease=ms]} tag. A lease
+ * expires unless its client renews it within the given period.
+ *
+ * All leases share a single delay queue and thread. Renewals only move the
+ * deadline, the queue entry is rescheduled lazily when it becomes due, and
+ * revoked leases are discarded when they are taken from the queue.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+class Leases {
+
+	private final static Logger LOG = Logger.getLogger(Leases.class.getName());
+
+	private static class Lease implements Delayed {
+
+		final String id;
+		final long period;
+		volatile long deadline;
+		long queued;
+
+		Lease(String id, long period) {
+			this.id = id;
+			this.period = period;
+			this.deadline = System.nanoTime() + period;
+			this.queued = this.deadline;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(this.queued - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			return Long.compare(this.queued, ((Lease) o).queued);
+		}
+	}
+
+	private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+	private final DelayQueue<Lease> queue = new DelayQueue<>();
+	private final Consumer<String> expired;
+	private Thread thread;
+
+	/**
+	 * @param expired invoked with the id of each expired lease, from the lease
+	 * thread
+	 */
+	Leases(Consumer<String> expired) {
+		this.expired = expired;
+	}
+
+	/**
+	 * Grants a lease unless the allocation already holds one.
+	 *
+	 * @param id the allocation id
+	 * @param millis the lease period in milliseconds
+	 */
+	void grant(String id, long millis) {
+		Lease lease = new Lease(id, TimeUnit.MILLISECONDS.toNanos(millis));
+		if (this.leases.putIfAbsent(id, lease) == null) {
+			start();
+			this.queue.add(lease);
+		}
+	}
+
+	/**
+	 * Extends the lease of an allocation by another period.
+	 *
+	 * @param id the allocation id
+	 * @return whether the allocation holds a lease
+	 */
+	boolean renew(String id) {
+		Lease lease = this.leases.get(id);
+		if (lease == null) {
+			return false;
+		}
+		lease.deadline = System.nanoTime() + lease.period;
+		return true;
+	}
+
+	void revoke(String id) {
+		this.leases.remove(id);
+	}
+
+	int size() {
+		return this.leases.size();
+	}
+
+	private synchronized void start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this::run, "allocation-leases");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				Lease lease = this.queue.take();
+				if (this.leases.get(lease.id) != lease) {
+					continue;
+				}
+				long deadline = lease.deadline;
+				if (deadline - System.nanoTime() > 0) {
+					lease.queued = deadline;
+					this.queue.add(lease);
+				} else if (this.leases.remove(lease.id, lease)) {
+					try {
+						this.expired.accept(lease.id);
+					} catch (RuntimeException ex) {
+						LOG.log(Level.SEVERE, "Could not expire lease of '" + lease.id + "'", ex);
+					}
+				}
+			}
+		} catch (InterruptedException ex) {
+			LOG.log(Level.FINE, "Lease thread interrupted, leases are no longer enforced");
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ * Direct access to the allocation engine for clients that run in the same
+ * JVM as the allocation server.
+ *
+ * Requests are handed to {@link Allocations} without passing through RSB, so
+ * no serialization or queueing takes place. Decisions are still published
+ * via RSB for remote observers, and in-process clients are informed about
+ * updates via {@link AllocationListener} callbacks.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class LocalAllocationService {
+
+	private final static Logger LOG = Logger.getLogger(LocalAllocationService.class.getName());
+	private static LocalAllocationService instance;
+
+	private final Allocations allocations;
+	private final NotificationService notifications;
+
+	private LocalAllocationService() {
+		this.allocations = Allocations.getInstance();
+		this.notifications = NotificationService.getInstance();
+	}
+
+	public synchronized static LocalAllocationService getInstance() {
+		if (instance == null) {
+			instance = new LocalAllocationService();
+		}
+		return instance;
+	}
+
+	/**
+	 * Submits a new allocation request.
+	 *
+	 * @param allocation the requested allocation, must be in state
+	 * {@code REQUESTED}
+	 * @return whether the allocation has been scheduled
+	 */
+	public boolean submit(ResourceAllocation allocation) {
+		if (!allocation.getState().equals(REQUESTED)) {
+			LOG.log(Level.WARNING, "attempt to submit allocation ''{0}'' in state ''{1}'' ignored", new Object[]{allocation.getId(), allocation.getState()});
+			return false;
+		}
+		return this.allocations.handle(allocation);
+	}
+
+	/**
+	 * Submits a new allocation request and registers a listener for its
+	 * updates before the request is processed.
+	 *
+	 * @param allocation the requested allocation
+	 * @param listener the listener informed about updates of this allocation
+	 * @return whether the allocation has been scheduled
+	 */
+	public boolean submit(ResourceAllocation allocation, AllocationListener listener) {
+		this.notifications.addListener(allocation.getId(), listener);
+		return submit(allocation);
+	}
+
+	/**
+	 * Submits several allocation requests that only make sense together.
+	 * Either all of them are scheduled or all of them are rejected.
+	 *
+	 * @param allocations the requested allocations, must be in state
+	 * {@code REQUESTED}
+	 * @return whether the allocations have been scheduled
+	 */
+	public boolean submitAll(List<ResourceAllocation> allocations) {
+		for (ResourceAllocation allocation : allocations) {
+			if (!allocation.getState().equals(REQUESTED)) {
+				LOG.log(Level.WARNING, "attempt to submit allocation ''{0}'' in state ''{1}'' ignored", new Object[]{allocation.getId(), allocation.getState()});
+				return false;
+			}
+		}
+		return this.allocations.handleAll(allocations);
+	}
+
+	/**
+	 * Submits several allocation requests atomically and registers a listener
+	 * for the updates of each of them before the requests are processed.
+	 *
+	 * @param allocations the requested allocations
+	 * @param listeners the listeners, one for each allocation
+	 * @return whether the allocations have been scheduled
+	 */
+	public boolean submitAll(List<ResourceAllocation> allocations, List<? extends AllocationListener> listeners) {
+		for (int i = 0; i < allocations.size() && i < listeners.size(); i++) {
+			this.notifications.addListener(allocations.get(i).getId(), listeners.get(i));
+		}
+		return submitAll(allocations);
+	}
+
+	/**
+	 * Modifies a scheduled or allocated allocation.
+	 *
+	 * @param allocation the allocation containing the new values, its state
+	 * must match the current state
+	 * @return whether the modification has been successful
+	 */
+	public boolean modify(ResourceAllocation allocation) {
+		return this.allocations.handle(allocation);
+	}
+
+	/**
+	 * Cancels a scheduled allocation or waiting request, or aborts an
+	 * allocated one.
+	 *
+	 * @param id the id of the allocation
+	 * @return whether the allocation has been terminated
+	 */
+	public boolean cancel(String id) {
+		return this.allocations.cancel(id, "client request");
+	}
+
+	/**
+	 * Cancels or aborts all allocations and waiting requests holding a
+	 * resource with the given prefix, or sharing a token if the selector is
+	 * of the form {@code #token}.
+	 *
+	 * @param selector the resource prefix or token
+	 * @return the number of terminated allocations
+	 * @throws IllegalArgumentException if the selector would match every
+	 * resource
+	 */
+	public int cancelAll(String selector) {
+		return this.allocations.terminateAll(selector, "client request");
+	}
+
+	/**
+	 * Releases an allocated allocation or cancels a scheduled one.
+	 *
+	 * @param id the id of the allocation
+	 * @return whether the allocation has been terminated
+	 */
+	public boolean release(String id) {
+		ResourceAllocation current = this.allocations.get(id);
+		if (current != null && current.getState().equals(ALLOCATED)) {
+			return this.allocations.handle(ResourceAllocation.newBuilder(current).setState(RELEASED).build());
+		} else {
+			return cancel(id);
+		}
+	}
+
+	/**
+	 * Determines the slot an allocation would be given if it was requested
+	 * now, without requesting it.
+	 *
+	 * @param allocation the hypothetical allocation
+	 * @return the slot and the allocations blocking it
+	 */
+	public SlotProbe probe(ResourceAllocation allocation) {
+		return this.allocations.probe(allocation);
+	}
+
+	/**
+	 * Renews the lease of an allocation requested with a {@code [lease=ms]}
+	 * tag. Remote clients renew by sending the allocation again in state
+	 * {@code REQUESTED}, renewals are not published.
+	 *
+	 * @param id the id of the allocation
+	 * @return whether the allocation holds a lease
+	 */
+	public boolean renew(String id) {
+		return this.allocations.renew(id);
+	}
+
+	public ResourceAllocation get(String id) {
+		return this.allocations.get(id);
+	}
+
+	public void subscribe(AllocationListener listener) {
+		this.notifications.addListener(listener);
+	}
+
+	public void unsubscribe(AllocationListener listener) {
+		this.notifications.removeListener(listener);
+	}
+
+	public void subscribe(String id, AllocationListener listener) {
+		this.notifications.addListener(id, listener);
+	}
+
+	public void unsubscribe(String id, AllocationListener listener) {
+		this.notifications.removeListener(id, listener);
+	}
+}
@@ -0,0 +1,167 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+
+/**
+ * Registry of histograms, counters and gauges describing the allocation
+ * server.
+ *
+ * Histograms and counters are created once and recording does not
+ * allocate. Gauges are evaluated only when the metrics are rendered.
+ * Per-resource aggregates are kept by {@link Occupancy}. If
+ * {@code ALLOCATION_METRICS_PORT} is exported, the metrics are served in the
+ * Prometheus text format at {@code http://localhost:PORT/metrics}; they are
+ * also available via the {@code metrics} method of the {@link QueryServer}.
+ *
+ * All latencies are recorded in microseconds.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class Metrics {
+
+	private final static Logger LOG = Logger.getLogger(Metrics.class.getName());
+	private final static String PORTVAR = "ALLOCATION_METRICS_PORT";
+	private final static String PREFIX = "allocation_";
+	private final static String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+	private final static double[] PERCENTILES = {50, 90, 99, 99.9};
+
+	private static Metrics instance;
+
+	private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+	private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+	private HttpServer http;
+
+	final Histogram ingressWait = histogram("ingress_wait_us");
+	final Histogram lockHold = histogram("lock_hold_us");
+	final Histogram cascade = histogram("cascade_size");
+	final Histogram displaced = histogram("cascade_displaced");
+	final Histogram displacement = histogram("cascade_cost");
+	final Histogram publish = histogram("publish_us");
+	final Map<State, Histogram> decision = new EnumMap<>(State.class);
+	final Map<State, AtomicLong> transitions = new EnumMap<>(State.class);
+	final Occupancy occupancy = new Occupancy();
+
+	private Metrics() {
+		for (State s : State.values()) {
+			this.decision.put(s, histogram("decision_" + s.name().toLowerCase() + "_us"));
+			this.transitions.put(s, counter("transitions_" + s.name().toLowerCase() + "_total"));
+		}
+	}
+
+	public synchronized static Metrics getInstance() {
+		if (instance == null) {
+			instance = new Metrics();
+		}
+		return instance;
+	}
+
+	public final Histogram histogram(String name) {
+		return this.histograms.computeIfAbsent(name, k -> new Histogram());
+	}
+
+	public final AtomicLong counter(String name) {
+		return this.counters.computeIfAbsent(name, k -> new AtomicLong());
+	}
+
+	public void gauge(String name, LongSupplier supplier) {
+		this.gauges.put(name, supplier);
+	}
+
+	/**
+	 * Renders all metrics in the Prometheus text format. Histograms are
+	 * reported as summaries with selected quantiles.
+	 *
+	 * @return the rendered metrics
+	 */
+	public String render() {
+		StringBuilder b = new StringBuilder();
+		for (Map.Entry<String, AtomicLong> e : this.counters.entrySet()) {
+			String name = PREFIX + e.getKey();
+			b.append("# TYPE ").append(name).append(" counter\n");
+			b.append(name).append(' ').append(e.getValue().get()).append('\n');
+		}
+		for (Map.Entry<String, LongSupplier> e : this.gauges.entrySet()) {
+			String name = PREFIX + e.getKey();
+			b.append("# TYPE ").append(name).append(" gauge\n");
+			b.append(name).append(' ').append(e.getValue().getAsLong()).append('\n');
+		}
+		for (Map.Entry<String, Histogram> e : this.histograms.entrySet()) {
+			String name = PREFIX + e.getKey();
+			Histogram h = e.getValue();
+			b.append("# TYPE ").append(name).append(" summary\n");
+			for (int i = 0; i < QUANTILES.length; i++) {
+				b.append(name).append("{quantile=\"").append(QUANTILES[i]).append("\"} ").append(h.getValueAtPercentile(PERCENTILES[i])).append('\n');
+			}
+			b.append(name).append("_max ").append(h.getMax()).append('\n');
+			b.append(name).append("_sum ").append(h.getSum()).append('\n');
+			b.append(name).append("_count ").append(h.getCount()).append('\n');
+		}
+		this.occupancy.render(b, PREFIX);
+		return b.toString();
+	}
+
+	/**
+	 * Starts the local HTTP endpoint if {@code ALLOCATION_METRICS_PORT} is
+	 * set.
+	 */
+	public synchronized void serve() {
+		if (this.http != null || !System.getenv().containsKey(PORTVAR)) {
+			return;
+		}
+		try {
+			int port = Integer.parseInt(System.getenv(PORTVAR));
+			this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+			this.http.createContext("/metrics", (exchange) -> {
+				byte[] body = render().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			});
+			this.http.start();
+			LOG.log(Level.INFO, "Allocation metrics available at ''http://localhost:{0}/metrics''.", String.valueOf(port));
+		} catch (IOException | NumberFormatException ex) {
+			LOG.log(Level.WARNING, "Could not start metrics endpoint", ex);
+			this.http = null;
+		}
+	}
+
+	public synchronized void shutdown() {
+		if (this.http != null) {
+			this.http.stop(0);
+			this.http = null;
+		}
+	}
+}
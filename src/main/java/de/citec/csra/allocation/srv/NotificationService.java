@@ -16,17 +16,17 @@
  */
 package de.citec.csra.allocation.srv;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import rsb.Factory;
 import rsb.Informer;
 import rsb.ParticipantId;
 import rsb.RSBException;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
 
 /**
  *
@@ -35,11 +35,14 @@ import rsb.RSBException;
  */
 public class NotificationService {
 
-	private final Map<String, RemoteNotifier> notifiers = new HashMap<>();
-	private final Map<String, Future> futures = new HashMap<>();
+	private final Map<String, RemoteNotifier> notifiers = new ConcurrentHashMap<>();
+	private final List<AllocationListener> listeners = new CopyOnWriteArrayList<>();
+	private final Map<String, List<AllocationListener>> idListeners = new ConcurrentHashMap<>();
 	private final static Logger LOG = Logger.getLogger(NotificationService.class.getName());
-	private final ExecutorService exec = Executors.newCachedThreadPool();
+	private final NotificationTimer timer;
 	private Informer informer;
+	private Informer compact;
+	private Informer resources;
 	private ParticipantId participant;
 
 	private static NotificationService instance;
@@ -52,55 +55,168 @@ public class NotificationService {
 	}
 
 	private NotificationService() {
+		this.timer = new ThreadedTimer();
+		Metrics.getInstance().gauge("notifiers", this.timer::size);
 		try {
 			this.informer = Factory.getInstance().createInformer(AllocationServer.getScope());
 			this.informer.activate();
 			this.participant = this.informer.getId();
+			if (CompactEvents.isEnabled()) {
+				this.compact = Factory.getInstance().createInformer(CompactEvents.getScope());
+				this.compact.activate();
+			}
+			if (ResourceScopes.isEnabled()) {
+				this.resources = Factory.getInstance().createInformer(ResourceScopes.getRoot());
+				this.resources.activate();
+			}
 		} catch (RSBException ex) {
 			LOG.log(Level.SEVERE, "RSB communication failed", ex);
 			this.informer = null;
 		}
 	}
 
+	/**
+	 * Creates a service without RSB participants, e.g. to replace
+	 * notifications by a stub.
+	 *
+	 * @param timer the timer driving notifiers
+	 */
+	NotificationService(NotificationTimer timer) {
+		this.timer = timer;
+	}
+
 	public ParticipantId getID() {
 		return this.participant;
 	}
 
-	private boolean functional() {
-		return this.informer != null && this.informer.isActive();
+	/**
+	 * Notifiers drive the allocation state transitions and inform local
+	 * listeners regardless of RSB. Remote clients are only informed if the
+	 * informer could be created.
+	 *
+	 * @param id the allocation id
+	 */
+	public void init(String id) {
+		RemoteNotifier r = new RemoteNotifier(this.informer, this.compact, this.resources, id, this.timer);
+		this.notifiers.put(id, r);
+		this.timer.start(r);
+		r.update();
 	}
 
-	public void init(String id) {
-		if (functional()) {
-			RemoteNotifier r = new RemoteNotifier(this.informer, id);
-			this.notifiers.put(id, r);
-			this.futures.put(id, this.exec.submit(r));
-			r.update();
+	public void inform(String id) {
+		if (this.notifiers.containsKey(id)) {
+			this.notifiers.get(id).update(true);
+		} else {
+			LOG.log(Level.WARNING, "attempt to inform about allocation ''{0}'' ignored, no such allocation available", id);
 		}
 	}
 
+	/**
+	 * Publishes the current state of an allocation that is not monitored by
+	 * a notifier, e.g. a request that is dismissed from the wait list.
+	 *
+	 * @param id the allocation id
+	 */
+	public void announce(String id) {
+		new RemoteNotifier(this.informer, this.compact, this.resources, id, this.timer).update(true);
+	}
+
 	public void update(String id, boolean publish) {
-		if (functional()) {
-			if (this.notifiers.containsKey(id)) {
-				RemoteNotifier notifier = this.notifiers.get(id);
-				if (publish) {
-					notifier.update();
-				}
-				if (!Allocations.getInstance().isAlive(id)) {
-					if (this.futures.containsKey(id)) {
+		if (this.notifiers.containsKey(id)) {
+			RemoteNotifier notifier = this.notifiers.get(id);
+			if (publish) {
+				notifier.update();
+			}
+			if (!Allocations.getInstance().isAlive(id)) {
+				this.timer.stop(notifier);
+				this.notifiers.remove(id, notifier);
+			}
+		} else {
+			LOG.log(Level.WARNING, "attempt to update notifier for allocation ''{0}'' ignored, no such allocation available", id);
+		}
+	}
+
+	void finished(RemoteNotifier notifier) {
+		this.notifiers.remove(notifier.getId(), notifier);
+	}
+
+	public NotificationTimer getTimer() {
+		return this.timer;
+	}
 
-						Future f = this.futures.get(id);
-						f.cancel(false);
+	public void addListener(AllocationListener listener) {
+		this.listeners.add(listener);
+	}
+
+	public void removeListener(AllocationListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	public void addListener(String id, AllocationListener listener) {
+		this.idListeners.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>()).add(listener);
+	}
 
-						this.notifiers.remove(id);
-						this.futures.remove(id);
+	public void removeListener(String id, AllocationListener listener) {
+		List<AllocationListener> l = this.idListeners.get(id);
+		if (l != null) {
+			l.remove(listener);
+		}
+	}
+
+	/**
+	 * Informs local listeners about an update. Occurrences of a series are
+	 * additionally delivered to the listeners of the series id, which are
+	 * kept until the series has ended.
+	 *
+	 * @param allocation the updated allocation
+	 */
+	void dispatch(ResourceAllocation allocation) {
+		for (AllocationListener l : this.listeners) {
+			deliver(l, allocation);
+		}
+		String series = Tags.value(allocation, Tags.SERIES);
+		List<AllocationListener> forId = this.idListeners.get(allocation.getId());
+		if (forId != null) {
+			for (AllocationListener l : forId) {
+				deliver(l, allocation);
+			}
+			switch (allocation.getState()) {
+				case REJECTED:
+				case CANCELLED:
+				case ABORTED:
+				case RELEASED:
+					if (!allocation.getId().equals(series)) {
+						this.idListeners.remove(allocation.getId());
 					}
+					break;
+				default:
+					break;
+			}
+		}
+		if (series != null && !series.equals(allocation.getId())) {
+			List<AllocationListener> forSeries = this.idListeners.get(series);
+			if (forSeries != null) {
+				for (AllocationListener l : forSeries) {
+					deliver(l, allocation);
 				}
-			} else {
-				LOG.log(Level.WARNING, "attempt to update notifier for allocation ''{0}'' ignored, no such allocation available", id);
 			}
-		} else {
-			LOG.log(Level.WARNING, "attempt to update notifier for allocation ''{0}'' ignored, RSB communication not available", id);
+		}
+	}
+
+	/**
+	 * Forgets the listeners of a series that has ended.
+	 *
+	 * @param series the id of the series
+	 */
+	void ended(String series) {
+		this.idListeners.remove(series);
+	}
+
+	private void deliver(AllocationListener listener, ResourceAllocation allocation) {
+		try {
+			listener.updated(allocation);
+		} catch (RuntimeException ex) {
+			LOG.log(Level.WARNING, "Local listener failed on allocation ''" + allocation.getId() + "''", ex);
 		}
 	}
 }
@@ -0,0 +1,54 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+/**
+ * Drives {@link RemoteNotifier}s through their life cycle by invoking
+ * {@link RemoteNotifier#step()} whenever a state transition is due.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public interface NotificationTimer {
+
+	/**
+	 * Starts driving the given notifier.
+	 *
+	 * @param notifier the notifier
+	 */
+	void start(RemoteNotifier notifier);
+
+	/**
+	 * Re-evaluates the given notifier immediately, e.g. because its
+	 * allocation has been modified.
+	 *
+	 * @param notifier the notifier
+	 */
+	void wake(RemoteNotifier notifier);
+
+	/**
+	 * Stops driving the given notifier without any further transitions.
+	 *
+	 * @param notifier the notifier
+	 */
+	void stop(RemoteNotifier notifier);
+
+	/**
+	 * @return the number of notifiers currently driven by this timer
+	 */
+	int size();
+}
@@ -0,0 +1,281 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import de.citec.csra.rst.util.IntervalUtils;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ * Per-resource occupancy and contention aggregates, maintained incrementally
+ * on every state transition. Aggregates are kept for every resource prefix up
+ * to {@code ALLOCATION_OCCUPANCY_DEPTH} (3) path components, so that both a
+ * shared root like {@code /robot/} and its children can be observed.
+ *
+ * For each prefix, the number of active and queued (scheduled) allocations,
+ * the number of rejections and preemptions, and the ratio of reserved time
+ * over sliding windows of 1, 5 and 15 minutes are available. Prefixes without
+ * active or queued allocations are evicted once they have been idle for the
+ * longest window, which resets their counters.
+ *
+ * The ratio counts the time during which allocations were actually held,
+ * i.e. in state {@code ALLOCATED}, summed over all concurrent allocations,
+ * so it exceeds 1 for shared resources. Scheduled reservations only count as
+ * queued: they mostly lie in the future, and a reservation that is moved or
+ * cancelled before it begins never occupies the resource. Time is accounted
+ * in buckets of 10 seconds; the windows end at the current time and begin
+ * with the bucket that contains their start.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class Occupancy {
+
+	private final static String DEPTHVAR = "ALLOCATION_OCCUPANCY_DEPTH";
+	private final static long BUCKET = 10000000;
+	private final static int BUCKETS = 90;
+	private final static long[] WINDOWS = new long[]{60000000, 300000000, 900000000};
+	private final static long IDLE = BUCKETS * BUCKET;
+
+	static class Stats {
+
+		private long active;
+		private long queued;
+		private long rejected;
+		private long preempted;
+		private long changed;
+		private long touched;
+		private final long[] reserved = new long[BUCKETS];
+		private final long[] stamps = new long[BUCKETS];
+		private final LongSupplier clock;
+
+		Stats(LongSupplier clock) {
+			this.clock = clock;
+			this.changed = clock.getAsLong();
+			this.touched = this.changed;
+		}
+
+		private void add(long bucket, long value) {
+			int slot = (int) (bucket % BUCKETS);
+			if (this.stamps[slot] != bucket) {
+				this.stamps[slot] = bucket;
+				this.reserved[slot] = 0;
+			}
+			this.reserved[slot] += value;
+		}
+
+		private void integrate(long now) {
+			long t = Math.max(this.changed, now - BUCKETS * BUCKET);
+			if (this.active > 0) {
+				while (t < now) {
+					long bucket = t / BUCKET;
+					long end = Math.min(now, (bucket + 1) * BUCKET);
+					add(bucket, this.active * (end - t));
+					t = end;
+				}
+			}
+			this.changed = now;
+		}
+
+		synchronized void transition(State previous, State current, long now) {
+			if (previous == current) {
+				return;
+			}
+			this.touched = now;
+			if (previous == SCHEDULED) {
+				this.queued--;
+			}
+			if (current == SCHEDULED) {
+				this.queued++;
+			}
+			if (previous == ALLOCATED || current == ALLOCATED) {
+				integrate(now);
+				this.active += previous == ALLOCATED ? -1 : 1;
+			}
+			if (current == REJECTED) {
+				this.rejected++;
+			}
+		}
+
+		synchronized void preempted() {
+			this.preempted++;
+			this.touched = this.clock.getAsLong();
+		}
+
+		synchronized boolean isIdle(long now) {
+			return this.active == 0 && this.queued == 0 && now - this.touched > IDLE;
+		}
+
+		synchronized long getActive() {
+			return this.active;
+		}
+
+		synchronized long getQueued() {
+			return this.queued;
+		}
+
+		synchronized long getRejected() {
+			return this.rejected;
+		}
+
+		synchronized long getPreempted() {
+			return this.preempted;
+		}
+
+		/**
+		 * @param window the window length in microseconds
+		 * @return the reserved time within the window divided by its length
+		 */
+		synchronized double getRatio(long window) {
+			long now = this.clock.getAsLong();
+			integrate(now);
+			long current = now / BUCKET;
+			long oldest = current - window / BUCKET + 1;
+			long sum = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				if (this.stamps[i] >= oldest && this.stamps[i] <= current) {
+					sum += this.reserved[i];
+				}
+			}
+			return (double) sum / (window - BUCKET + now % BUCKET);
+		}
+	}
+
+	private final Map<String, Stats> stats = new ConcurrentSkipListMap<>();
+	private final int depth;
+	private final LongSupplier clock;
+	private long swept;
+
+	Occupancy() {
+		this(IntervalUtils::currentTimeInMicros);
+	}
+
+	Occupancy(LongSupplier clock) {
+		int d = 3;
+		if (System.getenv().containsKey(DEPTHVAR)) {
+			d = Integer.parseInt(System.getenv(DEPTHVAR));
+		}
+		this.depth = d;
+		this.clock = clock;
+		this.swept = clock.getAsLong();
+	}
+
+	Set<String> prefixes(ResourceAllocation allocation) {
+		Set<String> prefixes = new LinkedHashSet<>();
+		for (String resource : allocation.getResourceIdsList()) {
+			int components = 0;
+			for (int i = 1; i < resource.length() && components < this.depth; i++) {
+				if (resource.charAt(i) == '/') {
+					prefixes.add(resource.substring(0, i + 1));
+					components++;
+				}
+			}
+			if (components < this.depth && !resource.endsWith("/")) {
+				prefixes.add(resource);
+			}
+		}
+		return prefixes;
+	}
+
+	Stats get(String prefix) {
+		return this.stats.get(prefix);
+	}
+
+	/**
+	 * Accounts for a stored or removed allocation. If the resources of the
+	 * allocation changed, prefixes it left see the previous state end and
+	 * prefixes it entered see the current state begin.
+	 *
+	 * @param previous the previous version, or {@code null} if new
+	 * @param current the current version, or {@code null} if removed
+	 */
+	void update(ResourceAllocation previous, ResourceAllocation current) {
+		State from = previous != null ? previous.getState() : null;
+		State to = current != null ? current.getState() : null;
+		boolean moved = previous != null && current != null && !previous.getResourceIdsList().equals(current.getResourceIdsList());
+		if (from == to && !moved) {
+			return;
+		}
+		long now = this.clock.getAsLong();
+		Set<String> before = previous != null ? prefixes(previous) : Collections.emptySet();
+		Set<String> after = current != null ? prefixes(current) : Collections.emptySet();
+		Set<String> all = new LinkedHashSet<>(before);
+		all.addAll(after);
+		for (String prefix : all) {
+			this.stats.computeIfAbsent(prefix, k -> new Stats(this.clock)).transition(
+					before.contains(prefix) ? from : null,
+					after.contains(prefix) ? to : null, now);
+		}
+		if (now - this.swept > BUCKET) {
+			evict(now);
+		}
+	}
+
+	private void evict(long now) {
+		this.swept = now;
+		for (Iterator<Stats> it = this.stats.values().iterator(); it.hasNext();) {
+			if (it.next().isIdle(now)) {
+				it.remove();
+			}
+		}
+	}
+
+	void preempted(ResourceAllocation allocation) {
+		for (String prefix : prefixes(allocation)) {
+			this.stats.computeIfAbsent(prefix, k -> new Stats(this.clock)).preempted();
+		}
+	}
+
+	void render(StringBuilder b, String prefix) {
+		String active = prefix + "resource_active";
+		String queued = prefix + "resource_queued";
+		String rejected = prefix + "resource_rejected_total";
+		String preempted = prefix + "resource_preempted_total";
+		String ratio = prefix + "resource_reserved_ratio";
+		b.append("# TYPE ").append(active).append(" gauge\n");
+		this.stats.forEach((r, s) -> b.append(active).append(label(r)).append(' ').append(s.getActive()).append('\n'));
+		b.append("# TYPE ").append(queued).append(" gauge\n");
+		this.stats.forEach((r, s) -> b.append(queued).append(label(r)).append(' ').append(s.getQueued()).append('\n'));
+		b.append("# TYPE ").append(rejected).append(" counter\n");
+		this.stats.forEach((r, s) -> b.append(rejected).append(label(r)).append(' ').append(s.getRejected()).append('\n'));
+		b.append("# TYPE ").append(preempted).append(" counter\n");
+		this.stats.forEach((r, s) -> b.append(preempted).append(label(r)).append(' ').append(s.getPreempted()).append('\n'));
+		b.append("# TYPE ").append(ratio).append(" gauge\n");
+		this.stats.forEach((r, s) -> {
+			for (long w : WINDOWS) {
+				b.append(ratio).append("{resource=\"").append(escape(r)).append("\",window=\"").append(w / 1000000).append("s\"} ").
+						append(String.format("%.4f", s.getRatio(w))).append('\n');
+			}
+		});
+	}
+
+	private static String label(String resource) {
+		return "{resource=\"" + escape(resource) + "\"}";
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
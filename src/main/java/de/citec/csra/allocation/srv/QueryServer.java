@@ -0,0 +1,219 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rsb.Factory;
+import rsb.RSBException;
+import rsb.converter.DefaultConverterRepository;
+import rsb.converter.ProtocolBufferConverter;
+import rsb.patterns.DataCallback;
+import rsb.patterns.LocalServer;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import rst.timing.IntervalType.Interval;
+
+/**
+ * RPC interface for querying live allocations.
+ *
+ * The server is available at the scope given by {@code SCOPE_ALLOCATION_QUERY}
+ * and offers the following methods:
+ * <ul>
+ * <li>{@code get}: the allocation with the given id</li>
+ * <li>{@code prefix}: all allocations holding a resource with the given
+ * prefix</li>
+ * <li>{@code state}: all allocations in the given state</li>
+ * <li>{@code window}: all allocations whose slot overlaps the given
+ * interval</li>
+ * <li>{@code metrics}: the current {@link Metrics} in text format</li>
+ * <li>{@code dump}: writes the recent decisions to a new file and returns
+ * its path, see {@link DecisionRecorder}</li>
+ * <li>{@code server}: the participant id of the publishing allocation
+ * server</li>
+ * <li>{@code terminate}: cancels or aborts all allocations holding a resource
+ * with the given prefix, or sharing the given {@code #token}, and returns
+ * their number. The root prefix is refused.</li>
+ * <li>{@code probe}: the slot the given allocation would be given if it was
+ * requested now, returned as a list starting with the allocation in state
+ * {@code SCHEDULED} with the slot, or in state {@code REJECTED}, followed by
+ * its blockers</li>
+ * </ul>
+ *
+ * Lists are returned as length-delimited {@link ResourceAllocation} messages
+ * and can be read with {@link #decode(byte[])}. All queries are answered from
+ * the {@link AllocationIndex} or a snapshot of the live allocations without
+ * taking the allocation lock, only {@code terminate} is performed by the
+ * allocation engine and recorded like any other decision.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class QueryServer {
+
+	static {
+		DefaultConverterRepository.getDefaultConverterRepository()
+				.addConverter(new ProtocolBufferConverter<>(Interval.getDefaultInstance()));
+	}
+
+	private final static Logger LOG = Logger.getLogger(QueryServer.class.getName());
+	private final static String SCOPEVAR = "SCOPE_ALLOCATION_QUERY";
+	private final static String FALLBACK = "/coordination/allocationquery/";
+
+	private static QueryServer instance;
+	private static String scope;
+	private final LocalServer server;
+	private final AllocationIndex index;
+
+	private QueryServer() throws RSBException {
+		this.index = Allocations.getInstance().getIndex();
+		this.server = Factory.getInstance().createLocalServer(getScope());
+		this.server.addMethod("get", new DataCallback<ResourceAllocation, String>() {
+			@Override
+			public ResourceAllocation invoke(String id) throws Throwable {
+				ResourceAllocation a = index.get(id);
+				if (a == null) {
+					throw new IllegalArgumentException("no such allocation available: " + id);
+				}
+				return a;
+			}
+		});
+		this.server.addMethod("prefix", new DataCallback<byte[], String>() {
+			@Override
+			public byte[] invoke(String prefix) throws Throwable {
+				return encode(index.byPrefix(prefix));
+			}
+		});
+		this.server.addMethod("state", new DataCallback<byte[], String>() {
+			@Override
+			public byte[] invoke(String state) throws Throwable {
+				return encode(index.byState(State.valueOf(state.toUpperCase())));
+			}
+		});
+		this.server.addMethod("window", new DataCallback<byte[], Interval>() {
+			@Override
+			public byte[] invoke(Interval window) throws Throwable {
+				return encode(index.byWindow(window.getBegin().getTime(), window.getEnd().getTime()));
+			}
+		});
+		this.server.addMethod("metrics", new DataCallback<String, String>() {
+			@Override
+			public String invoke(String ignored) throws Throwable {
+				return Metrics.getInstance().render();
+			}
+		});
+		this.server.addMethod("dump", new DataCallback<String, String>() {
+			@Override
+			public String invoke(String ignored) throws Throwable {
+				return DecisionRecorder.getInstance().dump();
+			}
+		});
+		this.server.addMethod("server", new DataCallback<String, String>() {
+			@Override
+			public String invoke(String ignored) throws Throwable {
+				return String.valueOf(NotificationService.getInstance().getID());
+			}
+		});
+		this.server.addMethod("probe", new DataCallback<byte[], ResourceAllocation>() {
+			@Override
+			public byte[] invoke(ResourceAllocation allocation) throws Throwable {
+				SlotProbe probe = Allocations.getInstance().probe(allocation);
+				ResourceAllocation.Builder b = ResourceAllocation.newBuilder(allocation);
+				if (probe.isAvailable()) {
+					b.setState(State.SCHEDULED).setSlot(probe.getSlot());
+				} else {
+					b.setState(State.REJECTED);
+				}
+				List<ResourceAllocation> reply = new LinkedList<>(probe.getBlockers());
+				reply.add(0, b.build());
+				return encode(reply);
+			}
+		});
+		this.server.addMethod("terminate", new DataCallback<Long, String>() {
+			@Override
+			public Long invoke(String selector) throws Throwable {
+				if (selector == null) {
+					throw new IllegalArgumentException("no resource prefix or token given");
+				}
+				return (long) Allocations.getInstance().terminateAll(selector, "remote request");
+			}
+		});
+	}
+
+	public static String getScope() {
+		if (scope == null) {
+			if (System.getenv().containsKey(SCOPEVAR)) {
+				scope = System.getenv(SCOPEVAR);
+			} else {
+				LOG.log(Level.WARNING, "using fallback query scope ''{0}'', consider exporting ${1}", new String[]{FALLBACK, SCOPEVAR});
+				scope = FALLBACK;
+			}
+		}
+		return scope;
+	}
+
+	public synchronized static QueryServer getInstance() throws RSBException {
+		if (instance == null) {
+			instance = new QueryServer();
+		}
+		return instance;
+	}
+
+	public void activate() throws RSBException {
+		if (!this.server.isActive()) {
+			this.server.activate();
+			LOG.log(Level.INFO, "Allocation query service available at ''{0}''.", getScope());
+		}
+	}
+
+	public void deactivate() throws RSBException, InterruptedException {
+		if (this.server.isActive()) {
+			this.server.deactivate();
+		}
+	}
+
+	static byte[] encode(List<ResourceAllocation> allocations) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (ResourceAllocation a : allocations) {
+			a.writeDelimitedTo(out);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the list of allocations returned by a query.
+	 *
+	 * @param bytes the reply of a list query
+	 * @return the contained allocations
+	 * @throws IOException if the reply cannot be parsed
+	 */
+	public static List<ResourceAllocation> decode(byte[] bytes) throws IOException {
+		List<ResourceAllocation> result = new LinkedList<>();
+		InputStream in = new ByteArrayInputStream(bytes);
+		ResourceAllocation a;
+		while ((a = ResourceAllocation.parseDelimitedFrom(in)) != null) {
+			result.add(a);
+		}
+		return result;
+	}
+}
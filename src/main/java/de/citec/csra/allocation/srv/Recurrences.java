@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
+
+/**
+ * Periodic allocations requested with an {@code [every=ms]} tag and an
+ * optional {@code [count=n]} tag limiting the number of occurrences.
+ *
+ * Occurrences are materialized lazily: only the next few of them, configured
+ * with {@code ALLOCATION_RECURRENCE_AHEAD}, are live at any time. The first
+ * occurrence carries the id of the request, later ones are suffixed with
+ * their index, e.g. {@code id/3} or {@code id/3#token}. All occurrences carry
+ * a {@code [series=id]} tag with the id of the request, so that clients can
+ * relate them to their series.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+class Recurrences {
+
+	private final static Logger LOG = Logger.getLogger(Recurrences.class.getName());
+	private final static String AHEADVAR = "ALLOCATION_RECURRENCE_AHEAD";
+	private final static int FALLBACK = 2;
+
+	static class Series {
+
+		final ResourceAllocation base;
+		final long period;
+		final long count;
+		final Set<String> live = new LinkedHashSet<>();
+		long next;
+		int failures;
+		boolean stopped;
+
+		private Series(ResourceAllocation base, long period, long count) {
+			this.base = base;
+			this.period = period;
+			this.count = count;
+		}
+
+		boolean exhausted() {
+			return this.count > 0 && this.next >= this.count;
+		}
+	}
+
+	private final Map<String, Series> occurrences = new HashMap<>();
+	private final Set<Series> series = new LinkedHashSet<>();
+	private final int ahead;
+
+	Recurrences() {
+		int k = FALLBACK;
+		if (System.getenv().containsKey(AHEADVAR)) {
+			try {
+				k = Math.max(1, Integer.parseInt(System.getenv(AHEADVAR)));
+			} catch (NumberFormatException ex) {
+				LOG.log(Level.WARNING, "Ignoring malformed ${0}, using {1}", new Object[]{AHEADVAR, FALLBACK});
+			}
+		}
+		this.ahead = k;
+	}
+
+	int ahead() {
+		return this.ahead;
+	}
+
+	int size() {
+		return this.series.size();
+	}
+
+	boolean contains(Series s) {
+		return this.series.contains(s);
+	}
+
+	/**
+	 * Starts a new series for the given request.
+	 *
+	 * @param base the request carrying the recurrence tags
+	 * @return the series, or {@code null} if the tags are malformed
+	 */
+	Series start(ResourceAllocation base) {
+		long period;
+		long count = 0;
+		try {
+			period = Long.parseLong(Tags.value(base, Tags.EVERY)) * 1000;
+			if (Tags.has(base, Tags.COUNT)) {
+				count = Long.parseLong(Tags.value(base, Tags.COUNT));
+			}
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+		if (period <= 0 || count < 0) {
+			return null;
+		}
+		Series s = new Series(base, period, count);
+		this.series.add(s);
+		return s;
+	}
+
+	Series of(String id) {
+		return this.occurrences.get(id);
+	}
+
+	/**
+	 * Builds the next occurrence of a series. Occurrences that would already
+	 * be over are skipped.
+	 *
+	 * @param s the series
+	 * @param now the current time in microseconds
+	 * @return the occurrence, or {@code null} if the series is exhausted
+	 */
+	ResourceAllocation next(Series s, long now) {
+		Interval slot = s.base.getSlot();
+		if (s.next > 0 && slot.getEnd().getTime() + s.next * s.period < now) {
+			s.next = Math.max(s.next, (now - slot.getEnd().getTime()) / s.period + 1);
+		}
+		if (s.exhausted()) {
+			return null;
+		}
+		long index = s.next++;
+		long shift = index * s.period;
+		ResourceAllocation.Builder b = ResourceAllocation.newBuilder(s.base).
+				setId(id(s.base.getId(), index)).
+				setDescription(s.base.getDescription() + " [" + Tags.SERIES + "=" + s.base.getId() + "]").
+				setSlot(shift(slot, shift));
+		if (s.base.hasConstraints()) {
+			b.setConstraints(shift(s.base.getConstraints(), shift));
+		}
+		ResourceAllocation occurrence = b.build();
+		s.live.add(occurrence.getId());
+		this.occurrences.put(occurrence.getId(), s);
+		return occurrence;
+	}
+
+	/**
+	 * Forgets an occurrence that has been finished.
+	 *
+	 * @param id the occurrence id
+	 * @return the series of the occurrence, or {@code null} if the id does not
+	 * belong to a series
+	 */
+	Series ended(String id) {
+		Series s = this.occurrences.remove(id);
+		if (s != null) {
+			s.live.remove(id);
+		}
+		return s;
+	}
+
+	void drop(Series s) {
+		for (String id : s.live) {
+			this.occurrences.remove(id);
+		}
+		s.live.clear();
+		this.series.remove(s);
+	}
+
+	static String id(String base, long index) {
+		if (index == 0) {
+			return base;
+		}
+		String token = AllocationIndex.token(base);
+		if (token != null) {
+			return base.substring(0, base.length() - token.length() - 1) + "/" + index + "#" + token;
+		}
+		return base + "/" + index;
+	}
+
+	private static Interval shift(Interval interval, long shift) {
+		return Interval.newBuilder(interval).
+				setBegin(Timestamp.newBuilder().setTime(interval.getBegin().getTime() + shift)).
+				setEnd(Timestamp.newBuilder().setTime(interval.getEnd().getTime() + shift)).build();
+	}
+}
@@ -22,8 +22,10 @@ import java.util.logging.Level;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.WARNING;
 import java.util.logging.Logger;
+import rsb.Event;
 import rsb.Informer;
 import rsb.RSBException;
+import rsb.Scope;
 import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
 import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
 import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
@@ -37,14 +39,53 @@ import rst.timing.IntervalType.Interval;
 public class RemoteNotifier implements Runnable {
 
 	private final static Logger LOG = Logger.getLogger(RemoteNotifier.class.getName());
+	private final static long CONFIRMATION = 2000000;
+
+	private enum Phase {
+		INITIAL, BEGIN, END, DONE
+	}
 
 	private final Informer informer;
+	private final Informer compact;
+	private final Informer resources;
 	private final String id;
+	private final NotificationTimer timer;
 	private final Object monitor = new Object();
+	private volatile boolean announced = false;
+	private volatile boolean cancelled = false;
+	private boolean signalled = false;
+	private Phase phase = Phase.INITIAL;
+	private long deadline;
+	private volatile ResourceAllocation[] compacted;
 
 	public RemoteNotifier(Informer informer, String id) {
+		this(informer, id, null);
+	}
+
+	public RemoteNotifier(Informer informer, String id, NotificationTimer timer) {
+		this(informer, null, null, id, timer);
+	}
+
+	/**
+	 * @param informer the informer on the allocation scope
+	 * @param compact the informer on the compact scope, or {@code null} if
+	 * compact events are disabled
+	 * @param resources the informer on the resource scope tree, or
+	 * {@code null} if resource scopes are disabled
+	 * @param id the allocation id
+	 * @param timer the timer driving the notifier, or {@code null} for a
+	 * dedicated thread
+	 */
+	RemoteNotifier(Informer informer, Informer compact, Informer resources, String id, NotificationTimer timer) {
 		this.informer = informer;
+		this.compact = compact;
+		this.resources = resources;
 		this.id = id;
+		this.timer = timer;
+	}
+
+	public String getId() {
+		return this.id;
 	}
 
 	private Interval getSlot() {
@@ -52,103 +93,193 @@ public class RemoteNotifier implements Runnable {
 	}
 
 	public void update() {
-		publish();
+		update(false);
+	}
+
+	/**
+	 * Publishes the current allocation and wakes up the notifier.
+	 *
+	 * @param snapshot whether to publish the complete allocation on the
+	 * compact scope
+	 */
+	public void update(boolean snapshot) {
+		publish(snapshot);
+		if (this.timer != null) {
+			this.timer.wake(this);
+		} else {
+			signal();
+		}
+	}
+
+	void signal() {
 		synchronized (monitor) {
+			signalled = true;
 			monitor.notify();
 		}
 	}
 
+	/**
+	 * Stops the notifier, no further transitions are performed.
+	 */
+	void cancel() {
+		this.cancelled = true;
+		signal();
+	}
+
+	private void await(long micros) throws InterruptedException {
+		synchronized (monitor) {
+			if (!signalled) {
+				monitor.wait(micros / 1000, (int) ((micros % 1000) * 1000));
+			}
+			signalled = false;
+		}
+	}
+
 	private void publish() {
+		publish(false);
+	}
+
+	private void publish(boolean snapshot) {
 		ResourceAllocation allocation = Allocations.getInstance().get(id);
+		if (allocation == null) {
+			LOG.log(Level.WARNING, "Publish allocation with id ''{0}'' ignored, no such allocation available", id);
+			return;
+		}
+		NotificationService.getInstance().dispatch(allocation);
+		if (this.informer == null || !this.informer.isActive()) {
+			return;
+		}
 		try {
-			if (allocation != null) {
-				LOG.log(Level.INFO, "Publish allocation: {0}", shortString(allocation));
-				this.informer.publish(allocation);
-			} else {
-				LOG.log(Level.WARNING, "Publish allocation with id ''{0}'' ignored, no such allocation available", id);
+			if (LOG.isLoggable(Level.FINE)) {
+				LOG.log(Level.FINE, "Publish allocation: {0}", shortString(allocation));
 			}
+			long start = System.nanoTime();
+			this.informer.publish(allocation);
+			if (this.resources != null && this.resources.isActive()) {
+				for (Scope scope : ResourceScopes.getScopes(allocation, Allocations.getInstance().getIndex())) {
+					this.resources.publish(new Event(scope, ResourceAllocation.class, allocation));
+				}
+			}
+			if (this.compact != null && this.compact.isActive()) {
+				this.compact.publish(this.announced && !snapshot ? compact(allocation) : allocation);
+			}
+			Metrics.getInstance().publish.record((System.nanoTime() - start) / 1000);
+			this.announced = true;
 		} catch (RSBException ex) {
 			LOG.log(Level.SEVERE, "Could not publish current allocation '" + shortString(allocation) + "'", ex);
 		}
 	}
 
+	/**
+	 * Reuses the compact event of the last published version, so that its
+	 * encoding is taken from the {@link SerializationCache}.
+	 */
+	private ResourceAllocation compact(ResourceAllocation allocation) {
+		ResourceAllocation[] c = this.compacted;
+		if (c == null || c[0] != allocation) {
+			c = new ResourceAllocation[]{allocation, CompactEvents.compact(allocation)};
+			this.compacted = c;
+		}
+		return c[1];
+	}
+
+	/**
+	 * Drives the notifier in a dedicated thread until the allocation is
+	 * finished.
+	 */
 	@Override
 	public void run() {
 		try {
-
-			State initial = Allocations.getInstance().getState(id);
-			if (initial == null) {
-				LOG.log(Level.WARNING, "No initial state found: ''{0}'', discarding  id ''{1}''", new Object[]{initial, id});
-				return;
-			}
-
-			switch (initial) {
-				case REQUESTED:
-					synchronized (monitor) {
-						try {
-							monitor.wait(2000);
-						} catch (InterruptedException ex) {
-							interrupted();
-						}
-					}
-					if (!confirmState(SCHEDULED, WARNING)) {
-						Allocations.getInstance().setState(this.id, REJECTED);
-						publish();
-						return;
-					}
-					break;
-				case SCHEDULED:
-					break;
-				default:
-					LOG.log(Level.WARNING, "Illegal initial state ''{0}'', discarding id ''{1}'': already monitored?", initial);
-					return;
-			}
-
-//			wait for slot to begin
 			long wait;
-			Interval slot;
-			while ((slot = getSlot()) != null && ((wait = (slot.getBegin().getTime() - currentTimeInMicros()))  > 0)) {
+			while ((wait = step()) >= 0) {
 				try {
-					synchronized (monitor) {
-						monitor.wait(wait / 1000, (int) ((wait % 1000) * 1000));
-					}
-					if (!confirmState(SCHEDULED, FINE)) {
-						return;
-					}
+					await(wait);
 				} catch (InterruptedException ex) {
-					ex.printStackTrace();
 					interrupted();
 					return;
 				}
 			}
-			
-			Allocations.getInstance().setState(id, ALLOCATED);
-			publish();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
 
-//			wait for slot to end
-			while ((slot = getSlot()) != null && ((wait = (slot.getEnd().getTime() - currentTimeInMicros()))  > 0)) {
-				try {
-					synchronized (monitor) {
-						monitor.wait(wait / 1000, (int) ((wait % 1000) * 1000));
-					}
-					if (!confirmState(ALLOCATED, FINE)) {
-						return;
+	/**
+	 * Performs all state transitions that are due and returns the time until
+	 * the next one. Invocations must not overlap, a timer may however invoke
+	 * this method earlier than requested.
+	 *
+	 * @return the time in microseconds until the next invocation, or a
+	 * negative value if the notifier is finished
+	 */
+	public long step() {
+		long wait;
+		Interval slot;
+		if (this.cancelled) {
+			this.phase = Phase.DONE;
+			return -1;
+		}
+		switch (this.phase) {
+			case INITIAL:
+				State current = Allocations.getInstance().getState(id);
+				if (this.deadline == 0) {
+					if (current == null) {
+						LOG.log(Level.WARNING, "No initial state found: ''{0}'', discarding  id ''{1}''", new Object[]{current, id});
+						return finish();
+					} else if (current.equals(REQUESTED)) {
+						this.deadline = currentTimeInMicros() + CONFIRMATION;
+					} else if (!current.equals(SCHEDULED)) {
+						LOG.log(Level.WARNING, "Illegal initial state ''{0}'', discarding id ''{1}'': already monitored?", new Object[]{current, id});
+						return finish();
 					}
-				} catch (InterruptedException ex) {
-					ex.printStackTrace();
-					interrupted();
 				}
-			}
-
-			Allocations.getInstance().setState(id, RELEASED);
-			publish();
-			Allocations.getInstance().remove(id);
-
-		} catch (Exception e) {
-			e.printStackTrace();
+				if (REQUESTED.equals(current) && (wait = this.deadline - currentTimeInMicros()) > 0) {
+					return wait;
+				}
+				if (!confirmState(SCHEDULED, WARNING)) {
+					Allocations.getInstance().setState(this.id, REJECTED);
+					publish();
+					return finish();
+				}
+				this.phase = Phase.BEGIN;
+			case BEGIN:
+				if (!confirmState(SCHEDULED, FINE)) {
+					return finish();
+				}
+				if ((slot = getSlot()) != null && (wait = slot.getBegin().getTime() - currentTimeInMicros()) > 0) {
+					return wait;
+				}
+				Allocations.getInstance().setState(id, ALLOCATED);
+				if (slot != null) {
+					FlightEvents.transition(id, ALLOCATED, slot.getBegin().getTime(), currentTimeInMicros());
+				}
+				publish();
+				this.phase = Phase.END;
+			case END:
+				if (!confirmState(ALLOCATED, FINE)) {
+					return finish();
+				}
+				if ((slot = getSlot()) != null && (wait = slot.getEnd().getTime() - currentTimeInMicros()) > 0) {
+					return wait;
+				}
+				Allocations.getInstance().setState(id, RELEASED);
+				if (slot != null) {
+					FlightEvents.transition(id, RELEASED, slot.getEnd().getTime(), currentTimeInMicros());
+				}
+				publish();
+				Allocations.getInstance().retire(id);
+				return finish();
+			default:
+				return -1;
 		}
 	}
 
+	private long finish() {
+		this.phase = Phase.DONE;
+		NotificationService.getInstance().finished(this);
+		return -1;
+	}
+
 	private void interrupted() {
 
 		State current = Allocations.getInstance().getState(id);
@@ -176,7 +307,7 @@ public class RemoteNotifier implements Runnable {
 			LOG.log(Level.WARNING, "Setting state to ''{0}''.", action.name());
 			Allocations.getInstance().setState(id, action);
 			publish();
-			Allocations.getInstance().remove(id);
+			Allocations.getInstance().retire(id);
 		}
 		Thread.currentThread().interrupt();
 	}
@@ -185,7 +316,9 @@ public class RemoteNotifier implements Runnable {
 		State current = Allocations.getInstance().getState(id);
 		boolean confirmed = current != null && current.equals(state);
 		if (!confirmed) {
-			LOG.log(level, "Could not confirm state ''{0}'' for id ''{1}'': Current state is ''{2}''.", new Object[]{state, id, current});
+			if (LOG.isLoggable(level)) {
+				LOG.log(level, "Could not confirm state ''{0}'' for id ''{1}'': Current state is ''{2}''.", new Object[]{state, id, current});
+			}
 		}
 		return confirmed;
 	}
@@ -0,0 +1,136 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rsb.Scope;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+
+/**
+ * Maps resource ids to sub-scopes of the allocation scope.
+ *
+ * If enabled by exporting {@code ALLOCATION_RESOURCE_SCOPES=true}, every
+ * allocation event is published once on the allocation scope and
+ * additionally on the scopes of its resources. Resource scopes live in a
+ * separate tree next to the allocation scope, so that listeners on the
+ * allocation scope receive each event exactly once, e.g. resource
+ * {@code /robot/arm/} maps to {@code /coordination/allocation-res/robot/arm/}.
+ *
+ * Clients that are only interested in a part of the resource tree listen on
+ * the corresponding resource scope. They receive allocations on that
+ * resource and its descendants, and allocations on ancestor resources that
+ * conflict with live allocations on their part of the tree. Such events are
+ * published on the deepest conflicting resources only, so a listener above
+ * several of them receives one copy per conflicting resource.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class ResourceScopes {
+
+	private final static Logger LOG = Logger.getLogger(ResourceScopes.class.getName());
+	private final static String MODEVAR = "ALLOCATION_RESOURCE_SCOPES";
+	private final static String SUFFIX = "-res/";
+	private final static int CAPACITY = 1024;
+
+	private final static Map<String, Scope> SCOPES = Collections.synchronizedMap(new LinkedHashMap<String, Scope>(64, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Scope> eldest) {
+			return size() > CAPACITY;
+		}
+	});
+	private static Boolean enabled;
+
+	public synchronized static boolean isEnabled() {
+		if (enabled == null) {
+			enabled = Boolean.parseBoolean(System.getenv(MODEVAR));
+			if (enabled) {
+				LOG.log(Level.INFO, "publishing allocation events on resource scopes");
+			}
+		}
+		return enabled;
+	}
+
+	/**
+	 * @return the root of the resource scope tree, a sibling of the
+	 * allocation scope
+	 */
+	public static String getRoot() {
+		StringBuilder b = new StringBuilder(AllocationServer.getScope());
+		while (b.length() > 1 && b.charAt(b.length() - 1) == '/') {
+			b.setLength(b.length() - 1);
+		}
+		return b.append(SUFFIX).toString();
+	}
+
+	/**
+	 * Computes the scope on which events for the given resource are
+	 * published. Characters that are not allowed in scope components are
+	 * replaced by underscores.
+	 *
+	 * @param resource the resource id
+	 * @return the scope string for the resource
+	 */
+	public static String getScope(String resource) {
+		StringBuilder b = new StringBuilder(getRoot());
+		for (String component : resource.split("/")) {
+			if (!component.isEmpty()) {
+				b.append(component.replaceAll("[^a-zA-Z0-9_-]", "_")).append('/');
+			}
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Computes the resource scopes an allocation event is published on: the
+	 * scopes of its resources and of the live resources below them, leaving
+	 * out scopes that already receive the event from a descendant.
+	 *
+	 * @param allocation the allocation
+	 * @param index the index of live allocations
+	 * @return the scopes to publish on
+	 */
+	static Set<Scope> getScopes(ResourceAllocation allocation, AllocationIndex index) {
+		Set<String> resources = new LinkedHashSet<>();
+		for (String resource : allocation.getResourceIdsList()) {
+			resources.add(resource);
+			resources.addAll(index.resourcesByPrefix(resource));
+		}
+		Set<Scope> scopes = new LinkedHashSet<>();
+		for (String resource : resources) {
+			if (!hasDescendant(resource, resources)) {
+				scopes.add(SCOPES.computeIfAbsent(resource, r -> new Scope(getScope(r))));
+			}
+		}
+		return scopes;
+	}
+
+	private static boolean hasDescendant(String resource, Set<String> resources) {
+		for (String r : resources) {
+			if (r.length() > resource.length() && r.startsWith(resource)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
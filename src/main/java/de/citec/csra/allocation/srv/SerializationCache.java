@@ -0,0 +1,130 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import rsb.converter.ConversionException;
+import rsb.converter.Converter;
+import rsb.converter.ConverterSignature;
+import rsb.converter.ProtocolBufferConverter;
+import rsb.converter.UserData;
+import rsb.converter.WireContents;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+
+/**
+ * Converter for {@link ResourceAllocation} messages that keeps the encoded
+ * wire form of the most recently published version of each allocation.
+ *
+ * Allocations are immutable and every modification in {@link Allocations}
+ * creates a new instance, so a version is identified by the instance
+ * itself. Publishing the same instance again reuses the cached bytes instead
+ * of encoding the message again. Entries are invalidated whenever an
+ * allocation is stored or removed. Compact events are cached separately
+ * from complete allocations, see {@link CompactEvents}. Hits and misses are counted in
+ * {@link Metrics}.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class SerializationCache implements Converter<ByteBuffer> {
+
+	private final static int CAPACITY = 4096;
+	private static SerializationCache instance;
+
+	private final ProtocolBufferConverter<ResourceAllocation> delegate;
+	private final Map<String, Entry> cache;
+	private final Map<String, Entry> compacts;
+	private final AtomicLong hits = Metrics.getInstance().counter("serialization_cache_hits");
+	private final AtomicLong misses = Metrics.getInstance().counter("serialization_cache_misses");
+
+	private static class Entry {
+
+		private final ResourceAllocation message;
+		private final ByteBuffer serialization;
+		private final String schema;
+
+		Entry(ResourceAllocation message, ByteBuffer serialization, String schema) {
+			this.message = message;
+			this.serialization = serialization;
+			this.schema = schema;
+		}
+	}
+
+	private SerializationCache() {
+		this.delegate = new ProtocolBufferConverter<>(ResourceAllocation.getDefaultInstance());
+		this.cache = lru();
+		this.compacts = lru();
+	}
+
+	private static Map<String, Entry> lru() {
+		return new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > CAPACITY;
+			}
+		};
+	}
+
+	public synchronized static SerializationCache getInstance() {
+		if (instance == null) {
+			instance = new SerializationCache();
+		}
+		return instance;
+	}
+
+	@Override
+	public WireContents<ByteBuffer> serialize(Class<?> typeInfo, Object data) throws ConversionException {
+		if (!(data instanceof ResourceAllocation)) {
+			return this.delegate.serialize(typeInfo, data);
+		}
+		ResourceAllocation allocation = (ResourceAllocation) data;
+		Map<String, Entry> entries = CompactEvents.isCompact(allocation) ? this.compacts : this.cache;
+		synchronized (this.cache) {
+			Entry e = entries.get(allocation.getId());
+			if (e != null && e.message == allocation) {
+				this.hits.incrementAndGet();
+				return new WireContents<>(e.serialization.duplicate(), e.schema);
+			}
+		}
+		this.misses.incrementAndGet();
+		WireContents<ByteBuffer> contents = this.delegate.serialize(typeInfo, data);
+		synchronized (this.cache) {
+			entries.put(allocation.getId(), new Entry(allocation, contents.getSerialization().duplicate(), contents.getWireSchema()));
+		}
+		return contents;
+	}
+
+	@Override
+	public UserData<ByteBuffer> deserialize(String wireSchema, ByteBuffer buffer) throws ConversionException {
+		return this.delegate.deserialize(wireSchema, buffer);
+	}
+
+	@Override
+	public ConverterSignature getSignature() {
+		return this.delegate.getSignature();
+	}
+
+	void invalidate(String id) {
+		synchronized (this.cache) {
+			this.cache.remove(id);
+			this.compacts.remove(id);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Collections;
+import java.util.List;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.timing.IntervalType.Interval;
+
+/**
+ * Outcome of probing a hypothetical allocation: the slot it would be given if
+ * it was requested now, and the allocations that currently block it.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class SlotProbe {
+
+	private final Interval slot;
+	private final List<ResourceAllocation> blockers;
+
+	SlotProbe(Interval slot, List<ResourceAllocation> blockers) {
+		this.slot = slot;
+		this.blockers = Collections.unmodifiableList(blockers);
+	}
+
+	public boolean isAvailable() {
+		return this.slot != null;
+	}
+
+	/**
+	 * @return the slot the allocation would be given, or {@code null} if it
+	 * would be rejected
+	 */
+	public Interval getSlot() {
+		return this.slot;
+	}
+
+	/**
+	 * @return the blocking allocations ordered by their end
+	 */
+	public List<ResourceAllocation> getBlockers() {
+		return this.blockers;
+	}
+}
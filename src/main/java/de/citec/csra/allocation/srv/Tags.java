@@ -0,0 +1,70 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+
+/**
+ * Opt-in modes are requested by clients with tags in the allocation
+ * description, e.g. {@code [wait]} or {@code [lease=500]}, since the
+ * allocation type itself cannot be extended.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+final class Tags {
+
+	final static String WAIT = "wait";
+	final static String SHARED = "shared";
+	final static String GANG = "gang";
+	final static String EVERY = "every";
+	final static String COUNT = "count";
+	final static String LEASE = "lease";
+	final static String SERIES = "series";
+
+	private final static Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
+	private Tags() {
+	}
+
+	private static Matcher matcher(ResourceAllocation allocation, String tag) {
+		Pattern p = PATTERNS.computeIfAbsent(tag, t -> Pattern.compile("\\[" + Pattern.quote(t) + "(?:=([^\\]]*))?\\]"));
+		return p.matcher(allocation.hasDescription() ? allocation.getDescription() : "");
+	}
+
+	static boolean has(ResourceAllocation allocation, String tag) {
+		return matcher(allocation, tag).find();
+	}
+
+	/**
+	 * @param allocation the allocation
+	 * @param tag the tag name
+	 * @return the value of the tag, the empty string for tags without value,
+	 * or {@code null} if the tag is not present
+	 */
+	static String value(ResourceAllocation allocation, String tag) {
+		Matcher m = matcher(allocation, tag);
+		if (m.find()) {
+			return m.group(1) != null ? m.group(1) : "";
+		}
+		return null;
+	}
+}
@@ -0,0 +1,69 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs every notifier in a thread of its own, which blocks until the next
+ * transition is due.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class ThreadedTimer implements NotificationTimer {
+
+	private final ExecutorService exec = Executors.newCachedThreadPool();
+	private final Map<RemoteNotifier, Future> futures = new ConcurrentHashMap<>();
+
+	@Override
+	public void start(RemoteNotifier notifier) {
+		FutureTask<Void> task = new FutureTask<>(() -> {
+			try {
+				notifier.run();
+			} finally {
+				this.futures.remove(notifier);
+			}
+		}, null);
+		this.futures.put(notifier, task);
+		this.exec.execute(task);
+	}
+
+	@Override
+	public void wake(RemoteNotifier notifier) {
+		notifier.signal();
+	}
+
+	@Override
+	public void stop(RemoteNotifier notifier) {
+		notifier.cancel();
+		Future f = this.futures.remove(notifier);
+		if (f != null) {
+			f.cancel(false);
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.futures.size();
+	}
+}
@@ -0,0 +1,69 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+
+/**
+ * Flight recorder event for a timed transition performed by a
+ * {@link RemoteNotifier}, comparing the scheduled with the actual time.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+@Name("de.citec.csra.allocation.Transition")
+@Label("Allocation Transition")
+@Category("Allocation")
+@Description("Timed transition of an allocation at the begin or end of its slot")
+class TransitionEvent extends Event {
+
+	private final static EventType TYPE = EventType.getEventType(TransitionEvent.class);
+
+	@Label("Id")
+	String id;
+
+	@Label("State")
+	String state;
+
+	@Label("Scheduled Time")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	long scheduled;
+
+	@Label("Lateness")
+	@Timespan(Timespan.MICROSECONDS)
+	long lateness;
+
+	static void emit(String id, State state, long scheduled, long actual) {
+		if (!TYPE.isEnabled()) {
+			return;
+		}
+		TransitionEvent e = new TransitionEvent();
+		e.id = id;
+		e.state = state.name();
+		e.scheduled = scheduled / 1000;
+		e.lateness = actual - scheduled;
+		e.commit();
+	}
+}
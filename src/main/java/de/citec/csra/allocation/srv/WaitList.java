@@ -0,0 +1,132 @@
+/* 
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+
+/**
+ * Allocations waiting for resources to be freed, i.e. requests that could not
+ * be scheduled and asked to wait, or reservations that have been shortened
+ * and may regrow. Waiters are indexed by resource, so that only those sharing
+ * a prefix with freed resources have to be reconsidered.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+class WaitList {
+
+	private static class Waiter {
+
+		final ResourceAllocation allocation;
+		final long sequence;
+		final boolean shared;
+
+		Waiter(ResourceAllocation allocation, long sequence) {
+			this.allocation = allocation;
+			this.sequence = sequence;
+			this.shared = Tags.has(allocation, Tags.SHARED);
+		}
+	}
+
+	private final Map<String, Waiter> waiters = new HashMap<>();
+	private final NavigableMap<String, Set<Waiter>> resources = new TreeMap<>();
+	private long sequence;
+
+	synchronized void add(ResourceAllocation allocation) {
+		remove(allocation.getId());
+		Waiter w = new Waiter(allocation, this.sequence++);
+		this.waiters.put(allocation.getId(), w);
+		for (String r : allocation.getResourceIdsList()) {
+			this.resources.computeIfAbsent(r, k -> new LinkedHashSet<>()).add(w);
+		}
+	}
+
+	synchronized ResourceAllocation remove(String id) {
+		Waiter w = this.waiters.remove(id);
+		if (w == null) {
+			return null;
+		}
+		for (String r : w.allocation.getResourceIdsList()) {
+			Set<Waiter> s = this.resources.get(r);
+			if (s != null) {
+				s.remove(w);
+				if (s.isEmpty()) {
+					this.resources.remove(r);
+				}
+			}
+		}
+		return w.allocation;
+	}
+
+	synchronized ResourceAllocation get(String id) {
+		Waiter w = this.waiters.get(id);
+		return w != null ? w.allocation : null;
+	}
+
+	synchronized boolean isShared(String id) {
+		Waiter w = this.waiters.get(id);
+		return w != null && w.shared;
+	}
+
+	synchronized boolean contains(String id) {
+		return this.waiters.containsKey(id);
+	}
+
+	synchronized int size() {
+		return this.waiters.size();
+	}
+
+	/**
+	 * Finds all waiters with a resource that shares a prefix with one of the
+	 * given resources, ordered by descending priority and then by arrival.
+	 *
+	 * @param freed the freed resources
+	 * @return the waiters to reconsider
+	 */
+	synchronized List<ResourceAllocation> candidates(List<String> freed) {
+		Set<Waiter> found = new LinkedHashSet<>();
+		for (String r : freed) {
+			for (Set<Waiter> s : this.resources.subMap(r, true, r + Character.MAX_VALUE, true).values()) {
+				found.addAll(s);
+			}
+			for (int i = 1; i < r.length(); i++) {
+				Set<Waiter> s = this.resources.get(r.substring(0, i));
+				if (s != null) {
+					found.addAll(s);
+				}
+			}
+		}
+		List<Waiter> sorted = new ArrayList<>(found);
+		sorted.sort((l, r) -> {
+			int p = r.allocation.getPriority().compareTo(l.allocation.getPriority());
+			return p != 0 ? p : Long.compare(l.sequence, r.sequence);
+		});
+		List<ResourceAllocation> candidates = new ArrayList<>(sorted.size());
+		for (Waiter w : sorted) {
+			candidates.add(w.allocation);
+		}
+		return candidates;
+	}
+}
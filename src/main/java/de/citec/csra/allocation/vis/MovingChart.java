@@ -17,7 +17,9 @@
 package de.citec.csra.allocation.vis;
 
 import de.citec.csra.allocation.srv.AllocationServer;
-import de.citec.csra.rst.util.IntervalUtils;
+import de.citec.csra.allocation.srv.CompactEvents;
+import de.citec.csra.allocation.srv.QueryServer;
+import de.citec.csra.allocation.srv.ResourceScopes;
 import java.awt.BasicStroke;
 import static java.awt.BasicStroke.CAP_BUTT;
 import static java.awt.BasicStroke.JOIN_BEVEL;
@@ -33,8 +35,8 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
@@ -58,15 +60,12 @@ import org.jfree.ui.RefineryUtilities;
 import rsb.Event;
 import rsb.Factory;
 import rsb.Handler;
-import rsb.Informer;
 import rsb.Listener;
-import rsb.ParticipantId;
 import rsb.RSBException;
 import rsb.converter.DefaultConverterRepository;
 import rsb.converter.ProtocolBufferConverter;
+import rsb.patterns.RemoteServer;
 import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
-import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator;
-import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy;
 import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority;
 import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
 import rst.communicationpatterns.TaskStateType;
@@ -109,6 +108,7 @@ public class MovingChart extends ApplicationFrame implements ActionListener, Han
 	Map<String, TimeSeries> sers = new HashMap<>();
 	Map<String, TaskSeries> tasks = new HashMap<>();
 	Map<String, Long> values = new HashMap<>();
+	Map<String, ResourceAllocation> snapshots = new HashMap<>();
 	final JFreeChart chart;
 
 	public MovingChart(final String title, int past, int future) {
@@ -290,78 +290,53 @@ public class MovingChart extends ApplicationFrame implements ActionListener, Han
 
 		int past = DEFAULT_PAST;
 		int future = DEFAULT_FUTURE;
+		String resource = null;
 
 		if (args.length > 0) {
-			if (args.length == 2) {
+			if (args.length == 2 || args.length == 3) {
 				try {
 					past = Integer.valueOf(args[0]);
 					future = Integer.valueOf(args[1]);
 				} catch (IllegalArgumentException ex) {
-					System.err.println("Could not read integer values for PAST or FUTURE.\nusage: csra-allocation-viewer [PAST FUTURE]");
+					System.err.println("Could not read integer values for PAST or FUTURE.\nusage: csra-allocation-viewer [PAST FUTURE [RESOURCE]]");
 					System.exit(1);
 				}
+				if (args.length == 3) {
+					resource = args[2];
+				}
 			} else {
-				System.err.println("usage: csra-allocation-viewer [PAST FUTURE]");
+				System.err.println("usage: csra-allocation-viewer [PAST FUTURE [RESOURCE]]");
 				System.exit(1);
 			}
 		}
 
 		final MovingChart demo = new MovingChart("Resource Allocation Chart", past, future);
-		Listener l = Factory.getInstance().createListener(AllocationServer.getScope());
-		final Informer myInformer = Factory.getInstance().createInformer(AllocationServer.getScope());
-		final Object monitor = new Object();
-
-		final String queryId = UUID.randomUUID().toString();
-		final String randomResource = UUID.randomUUID().toString();
-		final ResourceAllocation query = ResourceAllocation.newBuilder().
-				setDescription("server id query").
-				setId(queryId).
-				setSlot(IntervalUtils.buildRelativeRst(0, 10000, TimeUnit.MICROSECONDS)).
-				setPolicy(Policy.FIRST).
-				setPriority(Priority.NO).
-				setState(State.REQUESTED).
-				setInitiator(Initiator.SYSTEM).
-				addResourceIds(randomResource).
-				build();
-
-		Handler filterInstall = (event) -> {
-			boolean hasFilter = false;
-			if (event.getData() instanceof ResourceAllocation) {
-				ResourceAllocation response = (ResourceAllocation) event.getData();
-				if (response.getId().equals(queryId)) {
-					if (!event.getId().getParticipantId().equals(myInformer.getId())) {
-						final ParticipantId serverId = event.getId().getParticipantId();
-						if (!hasFilter) {
-							l.addFilter((toFilter) -> {
-								boolean ok = toFilter.getId().getParticipantId().equals(serverId);
-								return ok;
-							});
-							hasFilter = true;
-						}
-						synchronized (monitor) {
-							monitor.notify();
-						}
-
-					}
-				}
-			}
-		};
-		l.addHandler(filterInstall, true);
+		final Listener l;
+		if (resource != null && ResourceScopes.isEnabled()) {
+			l = Factory.getInstance().createListener(ResourceScopes.getScope(resource));
+		} else {
+			l = Factory.getInstance().createListener(AllocationServer.getScope());
+		}
 
-		l.activate();
-		myInformer.activate();
-		myInformer.publish(query);
-		myInformer.deactivate();
-		synchronized (monitor) {
+		// only the server publishes on resource scopes, client requests arrive on the allocation scope
+		if (resource == null || !ResourceScopes.isEnabled()) {
+			RemoteServer query = Factory.getInstance().createRemoteServer(QueryServer.getScope());
 			try {
-				monitor.wait(5000);
-			} catch (InterruptedException ex) {
-				System.out.println("failed to install server filter, timeout");
+				query.activate();
+				final String serverId = query.call("server", "", 5);
+				l.addFilter((toFilter) -> {
+					boolean ok = toFilter.getId().getParticipantId().toString().equals(serverId);
+					return ok;
+				});
+			} catch (ExecutionException | TimeoutException ex) {
+				System.out.println("failed to install server filter: " + ex);
+			} finally {
+				query.deactivate();
 			}
 		}
-		
-		l.removeHandler(filterInstall, true);
+
 		l.addHandler(demo, true);
+		l.activate();
 
 		demo.pack();
 		RefineryUtilities.centerFrameOnScreen(demo);
@@ -469,6 +444,24 @@ public class MovingChart extends ApplicationFrame implements ActionListener, Han
 	public void internalNotify(Event event) {
 		if (event.getData() instanceof ResourceAllocation) {
 			ResourceAllocation update = (ResourceAllocation) event.getData();
+			if (CompactEvents.isCompact(update)) {
+				ResourceAllocation snapshot = this.snapshots.get(update.getId());
+				if (snapshot == null) {
+					return;
+				}
+				update = CompactEvents.merge(snapshot, update);
+			}
+			switch (update.getState()) {
+				case REJECTED:
+				case CANCELLED:
+				case ABORTED:
+				case RELEASED:
+					this.snapshots.remove(update.getId());
+					break;
+				default:
+					this.snapshots.put(update.getId(), update);
+					break;
+			}
 			SwingUtilities.invokeLater(new Updater(update));
 		}
 	}
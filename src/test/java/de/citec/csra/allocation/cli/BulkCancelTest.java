@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.LocalAllocationService;
+import java.util.UUID;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class BulkCancelTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testPrefix() throws InterruptedException, TimeoutException {
+		LocalResource first = new LocalResource("Bulk", MAXIMUM, NORMAL, SYSTEM, 200, 500, MILLISECONDS, "/bulk/one");
+		LocalResource second = new LocalResource("Bulk", MAXIMUM, NORMAL, SYSTEM, 200, 500, MILLISECONDS, "/bulk/two");
+		LocalResource other = new LocalResource("Unrelated", MAXIMUM, NORMAL, SYSTEM, 200, 500, MILLISECONDS, "/bulk-other/");
+		assertTrue(first.submit());
+		assertTrue(second.submit());
+		assertTrue(other.submit());
+		assertEquals(2, LocalAllocationService.getInstance().cancelAll("/bulk/"));
+		first.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		second.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		other.await(TIMEOUT, MILLISECONDS, ALLOCATED);
+		other.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testToken() throws InterruptedException, TimeoutException {
+		LocalResource token = new LocalResource(ResourceAllocation.newBuilder(
+				new LocalResource("Token", MAXIMUM, NORMAL, SYSTEM, 200, 500, MILLISECONDS, "/bulk-token/").getAllocation()).
+				setId(UUID.randomUUID() + "#bulk-scene").build());
+		assertTrue(token.submit());
+		assertEquals(1, LocalAllocationService.getInstance().cancelAll("#bulk-scene"));
+		token.await(TIMEOUT, MILLISECONDS, CANCELLED);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRoot() {
+		LocalAllocationService.getInstance().cancelAll("/");
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.Capacities;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class CapacityTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testCapacity() throws InterruptedException, TimeoutException {
+		Capacities.getInstance().setCapacity("/capacity/", 2);
+		LocalResource first = new LocalResource("First", MAXIMUM, NORMAL, SYSTEM, 100, 500, MILLISECONDS, "/capacity/camera");
+		LocalResource second = new LocalResource("Second", MAXIMUM, NORMAL, SYSTEM, 100, 500, MILLISECONDS, "/capacity/camera");
+		LocalResource third = new LocalResource("Third", MAXIMUM, NORMAL, SYSTEM, 100, 800, MILLISECONDS, "/capacity/camera");
+		LocalResource fourth = new LocalResource("Fourth", MAXIMUM, NORMAL, SYSTEM, 200, 200, MILLISECONDS, "/capacity/camera");
+		assertTrue(first.submit());
+		assertTrue(second.submit());
+		first.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		second.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertEquals(first.getAllocation().getSlot(), first.current().getSlot());
+		assertEquals(second.getAllocation().getSlot(), second.current().getSlot());
+		long saturated = Math.min(first.current().getSlot().getEnd().getTime(), second.current().getSlot().getEnd().getTime());
+		assertTrue(third.submit());
+		third.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertEquals(saturated, third.current().getSlot().getBegin().getTime());
+		assertEquals(third.getAllocation().getSlot().getEnd(), third.current().getSlot().getEnd());
+		assertEquals(first.getAllocation().getSlot(), first.current().getSlot());
+		assertEquals(second.getAllocation().getSlot(), second.current().getSlot());
+		assertFalse(fourth.submit());
+		fourth.await(TIMEOUT, MILLISECONDS, REJECTED);
+		first.await(TIMEOUT, MILLISECONDS, RELEASED);
+		second.await(TIMEOUT, MILLISECONDS, RELEASED);
+		third.await(TIMEOUT, MILLISECONDS, RELEASED);
+		Capacities.getInstance().setCapacity("/capacity/", 1);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.CompactEvents;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.MAXIMUM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.NORMAL;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class CompactEventsTest {
+
+	private static Interval interval(long begin, long end) {
+		return Interval.newBuilder().
+				setBegin(Timestamp.newBuilder().setTime(begin).build()).
+				setEnd(Timestamp.newBuilder().setTime(end).build()).build();
+	}
+
+	private static final ResourceAllocation FULL = ResourceAllocation.newBuilder().
+			setId("compact").setState(SCHEDULED).setDescription("Arm").
+			setPolicy(MAXIMUM).setPriority(NORMAL).setInitiator(SYSTEM).
+			setSlot(interval(100, 200)).setConstraints(interval(0, 1000)).
+			addResourceIds("/robot/arm/").addResourceIds("/robot/head/").build();
+
+	@Test
+	public void testCompact() {
+		ResourceAllocation compact = CompactEvents.compact(FULL);
+		assertTrue(CompactEvents.isCompact(compact));
+		assertEquals(0, compact.getResourceIdsCount());
+		assertFalse(compact.hasConstraints());
+		assertEquals(CompactEvents.MARKER, compact.getDescription());
+		assertEquals(FULL.getId(), compact.getId());
+		assertEquals(FULL.getState(), compact.getState());
+		assertEquals(FULL.getSlot(), compact.getSlot());
+	}
+
+	@Test
+	public void testIsCompact() {
+		assertFalse(CompactEvents.isCompact(FULL));
+		assertFalse(CompactEvents.isCompact(ResourceAllocation.newBuilder(FULL).setDescription(CompactEvents.MARKER).build()));
+		assertFalse(CompactEvents.isCompact(ResourceAllocation.newBuilder(FULL).clearResourceIds().build()));
+	}
+
+	@Test
+	public void testMerge() {
+		ResourceAllocation updated = ResourceAllocation.newBuilder(FULL).setState(ALLOCATED).setSlot(interval(150, 250)).build();
+		assertEquals(updated, CompactEvents.merge(FULL, CompactEvents.compact(updated)));
+		ResourceAllocation released = ResourceAllocation.newBuilder(updated).setState(RELEASED).build();
+		assertEquals(released, CompactEvents.merge(CompactEvents.merge(FULL, CompactEvents.compact(updated)), CompactEvents.compact(released)));
+	}
+
+	@Test
+	public void testMergeComplete() {
+		ResourceAllocation modified = ResourceAllocation.newBuilder(FULL).setDescription("Arm and head").addResourceIds("/robot/leg/").build();
+		assertSame(modified, CompactEvents.merge(FULL, modified));
+	}
+}
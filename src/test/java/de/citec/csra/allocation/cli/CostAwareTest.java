@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.Allocations;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class CostAwareTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testCheapest() throws InterruptedException, TimeoutException {
+		LocalResource expensive = new LocalResource("Expensive", MAXIMUM, NORMAL, SYSTEM, 200, 200, MILLISECONDS, "cost-resource");
+		LocalResource cheap = new LocalResource("Cheap", MAXIMUM, LOW, SYSTEM, 400, 400, MILLISECONDS, "cost-resource");
+		ResourceAllocation a = new LocalResource("Request", PRESERVE, HIGH, SYSTEM, 200, 200, MILLISECONDS, "cost-resource").getAllocation();
+		Interval window = Interval.newBuilder().setBegin(a.getSlot().getBegin()).
+				setEnd(Timestamp.newBuilder().setTime(a.getSlot().getBegin().getTime() + 600000)).build();
+		LocalResource request = new LocalResource(ResourceAllocation.newBuilder(a).setConstraints(window).build());
+		Allocations.getInstance().setCostAware(true);
+		try {
+			assertTrue(expensive.submit());
+			assertTrue(cheap.submit());
+			assertTrue(request.submit());
+			request.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		} finally {
+			Allocations.getInstance().setCostAware(false);
+		}
+		Interval slot = request.current().getSlot();
+		assertEquals(200000, slot.getEnd().getTime() - slot.getBegin().getTime());
+		assertEquals(expensive.getAllocation().getSlot(), expensive.current().getSlot());
+		assertTrue(slot.getBegin().getTime() >= expensive.current().getSlot().getEnd().getTime());
+		assertTrue(request.cancel());
+		assertTrue(expensive.cancel());
+		if (cheap.current() != null) {
+			assertTrue(cheap.cancel());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.LocalAllocationService;
+import java.util.Arrays;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class GangTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testRejected() throws InterruptedException, TimeoutException {
+		LocalResource high = new LocalResource("Blocking", MAXIMUM, HIGH, SYSTEM, 0, 1000, MILLISECONDS, "/gang-rejected/arm");
+		LocalResource arm = new LocalResource("Arm", MAXIMUM, NORMAL, SYSTEM, 100, 500, MILLISECONDS, "/gang-rejected/arm");
+		LocalResource gripper = new LocalResource("Gripper", MAXIMUM, NORMAL, SYSTEM, 100, 500, MILLISECONDS, "/gang-rejected/gripper");
+		assertTrue(high.submit());
+		high.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertFalse(LocalAllocationService.getInstance().submitAll(
+				Arrays.asList(arm.getAllocation(), gripper.getAllocation()), Arrays.asList(arm, gripper)));
+		arm.await(TIMEOUT, MILLISECONDS, REJECTED);
+		gripper.await(TIMEOUT, MILLISECONDS, REJECTED);
+		assertNull(gripper.current());
+		high.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testScheduled() throws InterruptedException, TimeoutException {
+		LocalResource arm = new LocalResource("Arm", MAXIMUM, NORMAL, SYSTEM, 100, 300, MILLISECONDS, "/gang-scheduled/arm");
+		LocalResource speech = new LocalResource("Speech", MAXIMUM, NORMAL, SYSTEM, 500, 300, MILLISECONDS, "/gang-scheduled/speech");
+		assertTrue(LocalAllocationService.getInstance().submitAll(
+				Arrays.asList(arm.getAllocation(), speech.getAllocation()), Arrays.asList(arm, speech)));
+		arm.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		speech.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		arm.await(TIMEOUT, MILLISECONDS, RELEASED);
+		speech.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testGathered() throws InterruptedException, TimeoutException {
+		LocalResource arm = new LocalResource("Arm [gang=gang-gathered:2]", MAXIMUM, NORMAL, SYSTEM, 100, 300, MILLISECONDS, "/gang-gathered/arm");
+		LocalResource speech = new LocalResource("Speech [gang=gang-gathered:2]", MAXIMUM, NORMAL, SYSTEM, 100, 300, MILLISECONDS, "/gang-gathered/speech");
+		assertFalse(arm.submit());
+		arm.await(TIMEOUT, MILLISECONDS, REQUESTED);
+		assertNull(arm.current());
+		assertTrue(speech.submit());
+		arm.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		speech.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		arm.await(TIMEOUT, MILLISECONDS, RELEASED);
+		speech.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testIncomplete() throws InterruptedException, TimeoutException {
+		LocalResource arm = new LocalResource("Arm [gang=gang-incomplete:2]", MAXIMUM, NORMAL, SYSTEM, 0, 300, MILLISECONDS, "/gang-incomplete/arm");
+		assertFalse(arm.submit());
+		arm.await(TIMEOUT, MILLISECONDS, REQUESTED);
+		arm.await(TIMEOUT, MILLISECONDS, REJECTED);
+		assertFalse(arm.hasState(SCHEDULED));
+		assertNull(arm.current());
+	}
+}
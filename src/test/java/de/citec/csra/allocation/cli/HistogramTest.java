@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.Histogram;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class HistogramTest {
+
+	private static long bucket(long value) {
+		Histogram h = new Histogram();
+		h.record(value);
+		h.record(Long.MAX_VALUE);
+		return h.getValueAtPercentile(50);
+	}
+
+	@Test
+	public void testBuckets() {
+		for (long v = 0; v < 32; v++) {
+			assertEquals(v, bucket(v));
+		}
+		assertEquals(33, bucket(32));
+		assertEquals(33, bucket(33));
+		assertEquals(35, bucket(34));
+		assertEquals(63, bucket(63));
+		assertEquals(67, bucket(64));
+		assertEquals(67, bucket(67));
+		assertEquals(71, bucket(68));
+		assertEquals(1023, bucket(1023));
+		assertEquals(1087, bucket(1024));
+		for (long v = 32; v > 0 && v < Long.MAX_VALUE / 3; v = v * 3 + 1) {
+			long upper = bucket(v);
+			assertTrue(upper >= v);
+			assertTrue(upper - v < v / 16);
+		}
+	}
+
+	@Test
+	public void testLargest() {
+		Histogram h = new Histogram();
+		h.record(0);
+		h.record(Long.MAX_VALUE);
+		assertEquals(0, h.getValueAtPercentile(50));
+		assertEquals(Long.MAX_VALUE, h.getValueAtPercentile(100));
+		assertEquals(Long.MAX_VALUE, h.getMax());
+	}
+
+	@Test
+	public void testNegative() {
+		Histogram h = new Histogram();
+		h.record(-5);
+		assertEquals(1, h.getCount());
+		assertEquals(0, h.getSum());
+		assertEquals(0, h.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void testPercentiles() {
+		Histogram h = new Histogram();
+		assertEquals(0, h.getValueAtPercentile(50));
+		for (long v = 1; v <= 1000; v++) {
+			h.record(v);
+		}
+		assertEquals(1000, h.getCount());
+		assertEquals(500500, h.getSum());
+		assertEquals(500.5, h.getMean(), 0);
+		assertEquals(1, h.getValueAtPercentile(0));
+		assertEquals(511, h.getValueAtPercentile(50));
+		assertEquals(991, h.getValueAtPercentile(99));
+		assertEquals(1000, h.getValueAtPercentile(100));
+		h.reset();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getMax());
+		assertEquals(0, h.getValueAtPercentile(50));
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.AllocationListener;
+import de.citec.csra.allocation.srv.LocalAllocationService;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class LeaseTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testLease() throws InterruptedException, TimeoutException {
+		LocalResource renewed = new LocalResource("Renewed [lease=300]", MAXIMUM, NORMAL, SYSTEM, 0, 5000, MILLISECONDS, "lease-renewed");
+		LocalResource expired = new LocalResource("Expired [lease=300]", MAXIMUM, NORMAL, SYSTEM, 0, 5000, MILLISECONDS, "lease-expired");
+		assertTrue(renewed.submit());
+		assertTrue(expired.submit());
+		renewed.await(TIMEOUT, MILLISECONDS, ALLOCATED);
+		expired.await(TIMEOUT, MILLISECONDS, ALLOCATED);
+		for (int i = 0; i < 6; i++) {
+			Thread.sleep(100);
+			assertTrue(LocalAllocationService.getInstance().renew(renewed.getId()));
+		}
+		expired.await(TIMEOUT, MILLISECONDS, ABORTED);
+		assertEquals(ALLOCATED, renewed.current().getState());
+		assertTrue(renewed.release());
+		renewed.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testHeartbeat() throws InterruptedException, TimeoutException {
+		LocalResource heartbeat = new LocalResource("Heartbeat [lease=300]", MAXIMUM, NORMAL, SYSTEM, 0, 5000, MILLISECONDS, "lease-heartbeat");
+		assertTrue(heartbeat.submit());
+		heartbeat.await(TIMEOUT, MILLISECONDS, ALLOCATED);
+		AtomicInteger published = new AtomicInteger();
+		AllocationListener counter = a -> {
+			if (a.getId().equals(heartbeat.getId())) {
+				published.incrementAndGet();
+			}
+		};
+		LocalAllocationService.getInstance().subscribe(counter);
+		for (int i = 0; i < 6; i++) {
+			Thread.sleep(100);
+			assertTrue(heartbeat.submit());
+		}
+		LocalAllocationService.getInstance().unsubscribe(counter);
+		assertEquals(ALLOCATED, heartbeat.current().getState());
+		assertEquals(0, published.get());
+		assertTrue(heartbeat.release());
+		heartbeat.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+}
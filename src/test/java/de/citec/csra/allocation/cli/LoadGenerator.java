@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2017 Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.AllocationServer;
+import de.citec.csra.allocation.srv.Histogram;
+import static de.citec.csra.rst.util.IntervalUtils.buildRelativeRst;
+import static de.citec.csra.rst.util.IntervalUtils.currentTimeInMicros;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import rsb.Factory;
+import rsb.Informer;
+import rsb.Listener;
+import rsb.RSBException;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.REQUESTED;
+
+/**
+ * Open-loop load generator. Requests are sent at a fixed arrival rate no
+ * matter how fast the server answers, and scheduling latency is measured from
+ * the time a request was supposed to be sent rather than from the time it was
+ * actually sent. A stalled server or sender therefore shows up in the
+ * percentiles instead of silently lowering the offered load.
+ *
+ * Arguments are given as {@code key=value}:
+ * <ul>
+ * <li>{@code transport}: {@code inprocess} starts an embedded server,
+ * {@code remote} uses the configured RSB transports and an external server
+ * (inprocess)</li>
+ * <li>{@code rate}: requests per second (100)</li>
+ * <li>{@code seconds}: duration of the run (30)</li>
+ * <li>{@code priorities}: weighted priority mix (NORMAL:1)</li>
+ * <li>{@code policies}: weighted policy mix (MAXIMUM:1)</li>
+ * <li>{@code resources}: size of the resource pool, smaller pools overlap
+ * more (50)</li>
+ * <li>{@code width}: resources per request (1)</li>
+ * <li>{@code lead}: time between request and slot begin in ms (100)</li>
+ * <li>{@code durations}: slot duration range in ms (100-1000)</li>
+ * </ul>
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class LoadGenerator {
+
+	private final static double[] PERCENTILES = new double[]{50, 90, 99, 99.9, 99.99};
+
+	private static class Pending {
+
+		final long intended;
+		final long sent;
+		boolean scheduled;
+
+		Pending(long intended, long sent) {
+			this.intended = intended;
+			this.sent = sent;
+		}
+	}
+
+	private final Map<String, String> options = new HashMap<>();
+	private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+	private final Map<State, AtomicLong> outcomes = new ConcurrentHashMap<>();
+	private final Histogram corrected = new Histogram();
+	private final Histogram uncorrected = new Histogram();
+	private final Histogram lateness = new Histogram();
+	private final Random random = new Random();
+
+	public LoadGenerator(String[] args) {
+		for (String arg : args) {
+			String[] kv = arg.split("=", 2);
+			if (kv.length != 2) {
+				throw new IllegalArgumentException("Expected key=value, got '" + arg + "'");
+			}
+			this.options.put(kv[0], kv[1]);
+		}
+		for (State s : State.values()) {
+			this.outcomes.put(s, new AtomicLong());
+		}
+	}
+
+	private String option(String key, String fallback) {
+		return this.options.getOrDefault(key, fallback);
+	}
+
+	private static <T extends Enum<T>> List<T> mix(Class<T> type, String spec) {
+		List<T> weighted = new ArrayList<>();
+		for (String entry : spec.split(",")) {
+			String[] kw = entry.split(":");
+			T value = Enum.valueOf(type, kw[0].trim().toUpperCase());
+			int weight = kw.length > 1 ? Integer.parseInt(kw[1].trim()) : 1;
+			for (int i = 0; i < weight; i++) {
+				weighted.add(value);
+			}
+		}
+		return weighted;
+	}
+
+	private void received(ResourceAllocation allocation) {
+		long now = System.nanoTime();
+		Pending p = this.pending.get(allocation.getId());
+		if (p == null || allocation.getState().equals(REQUESTED)) {
+			return;
+		}
+		switch (allocation.getState()) {
+			case SCHEDULED:
+				if (!p.scheduled) {
+					p.scheduled = true;
+					this.corrected.record((now - p.intended) / 1000);
+					this.uncorrected.record((now - p.sent) / 1000);
+				}
+				return;
+			case ALLOCATED:
+				if (allocation.hasSlot()) {
+					this.lateness.record(currentTimeInMicros() - allocation.getSlot().getBegin().getTime());
+				}
+				return;
+			default:
+				this.outcomes.get(allocation.getState()).incrementAndGet();
+				this.pending.remove(allocation.getId());
+		}
+	}
+
+	public void run() throws RSBException, InterruptedException {
+		if (option("transport", "inprocess").equalsIgnoreCase("inprocess")) {
+			TestSetup.initServer();
+		}
+
+		double rate = Double.parseDouble(option("rate", "100"));
+		long seconds = Long.parseLong(option("seconds", "30"));
+		List<Priority> priorities = mix(Priority.class, option("priorities", "NORMAL:1"));
+		List<Policy> policies = mix(Policy.class, option("policies", "MAXIMUM:1"));
+		int resources = Integer.parseInt(option("resources", "50"));
+		int width = Math.min(resources, Integer.parseInt(option("width", "1")));
+		long lead = Long.parseLong(option("lead", "100"));
+		String[] range = option("durations", "100-1000").split("-");
+		long minDuration = Long.parseLong(range[0]);
+		long maxDuration = Long.parseLong(range[range.length - 1]);
+
+		Listener listener = Factory.getInstance().createListener(AllocationServer.getScope());
+		listener.addHandler((event) -> {
+			if (event.getData() instanceof ResourceAllocation) {
+				received((ResourceAllocation) event.getData());
+			}
+		}, true);
+		listener.activate();
+		Informer<Object> informer = Factory.getInstance().createInformer(AllocationServer.getScope());
+		informer.activate();
+
+		long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		long total = (long) (rate * seconds);
+		long start = System.nanoTime();
+		long behind = 0;
+		List<String> pool = new ArrayList<>();
+		for (int i = 0; i < resources; i++) {
+			pool.add("/load/" + i);
+		}
+
+		for (long i = 0; i < total; i++) {
+			long intended = start + i * interval;
+			long wait;
+			while ((wait = intended - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			long sent = System.nanoTime();
+			behind = Math.max(behind, sent - intended);
+
+			long duration = minDuration + (maxDuration > minDuration ? (long) (this.random.nextDouble() * (maxDuration - minDuration)) : 0);
+			String id = "load-" + i + "-" + start;
+			ResourceAllocation.Builder b = ResourceAllocation.newBuilder().
+					setId(id).setState(REQUESTED).setDescription("load").
+					setPolicy(policies.get(this.random.nextInt(policies.size()))).
+					setPriority(priorities.get(this.random.nextInt(priorities.size()))).
+					setInitiator(SYSTEM).setSlot(buildRelativeRst(lead, duration, MILLISECONDS));
+			int first = this.random.nextInt(resources);
+			for (int r = 0; r < width; r++) {
+				b.addResourceIds(pool.get((first + r) % resources));
+			}
+			this.pending.put(id, new Pending(intended, sent));
+			informer.publish(b.build());
+		}
+
+		long drain = System.currentTimeMillis() + lead + maxDuration + 5000;
+		while (!this.pending.isEmpty() && System.currentTimeMillis() < drain) {
+			Thread.sleep(100);
+		}
+
+		informer.deactivate();
+		listener.deactivate();
+		report(total, behind);
+	}
+
+	private void report(long total, long behind) {
+		System.out.println(String.format("requests: %d, sender fell behind by up to %d us", total, behind / 1000));
+		for (State s : State.values()) {
+			long c = this.outcomes.get(s).get();
+			if (c > 0) {
+				System.out.println(String.format("%-10s %d", s, c));
+			}
+		}
+		System.out.println(String.format("%-10s %d", "LOST", this.pending.size()));
+		System.out.println();
+		System.out.println(String.format("%-28s %10s%s", "latency [us]", "count", header()));
+		print("request->SCHEDULED", this.corrected);
+		print("  (from actual send)", this.uncorrected);
+		print("slot begin->ALLOCATED", this.lateness);
+	}
+
+	private static String header() {
+		StringBuilder b = new StringBuilder();
+		for (double p : PERCENTILES) {
+			b.append(String.format("%10s", "p" + p));
+		}
+		return b.append(String.format("%10s", "max")).toString();
+	}
+
+	private static void print(String name, Histogram h) {
+		StringBuilder b = new StringBuilder(String.format("%-28s %10d", name, h.getCount()));
+		for (double p : PERCENTILES) {
+			b.append(String.format("%10d", h.getValueAtPercentile(p)));
+		}
+		System.out.println(b.append(String.format("%10d", h.getMax())));
+	}
+
+	public static void main(String[] args) throws RSBException, InterruptedException {
+		System.out.println("Options: " + Arrays.toString(args));
+		new LoadGenerator(args).run();
+		System.exit(0);
+	}
+}
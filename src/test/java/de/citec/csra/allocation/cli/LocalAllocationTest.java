@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class LocalAllocationTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testLifecycle() throws InterruptedException, TimeoutException {
+		LocalResource res = new LocalResource("LocalSingle", MAXIMUM, NORMAL, SYSTEM, 100, 300, MILLISECONDS, "local-single-resource");
+		assertTrue(res.submit());
+		res.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		res.await(TIMEOUT, MILLISECONDS, ALLOCATED);
+		res.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException, TimeoutException {
+		LocalResource res = new LocalResource("LocalCancel", MAXIMUM, NORMAL, SYSTEM, 1000, 300, MILLISECONDS, "local-cancel-resource");
+		assertTrue(res.submit());
+		res.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertTrue(res.cancel());
+		res.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		assertFalse(res.cancel());
+	}
+
+	@Test
+	public void testConflict() throws InterruptedException, TimeoutException {
+		LocalResource high = new LocalResource("LocalHigh", MAXIMUM, HIGH, SYSTEM, 0, 1000, MILLISECONDS, "local-shared-resource");
+		LocalResource low = new LocalResource("LocalLow", MAXIMUM, LOW, SYSTEM, 0, 500, MILLISECONDS, "local-shared-resource");
+		assertTrue(high.submit());
+		high.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertFalse(low.submit());
+		low.await(TIMEOUT, MILLISECONDS, REJECTED);
+		high.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.AllocationListener;
+import de.citec.csra.allocation.srv.LocalAllocationService;
+import static de.citec.csra.rst.util.IntervalUtils.buildRelativeRst;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.REQUESTED;
+
+/**
+ * In-process counterpart of {@link AllocatableResource}: an allocation that
+ * is submitted via the {@link LocalAllocationService} and records the states
+ * it is informed about.
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class LocalResource implements AllocationListener {
+
+	private final ResourceAllocation allocation;
+	private final BlockingQueue<State> states = new LinkedBlockingQueue<>();
+	private final Set<State> seen = ConcurrentHashMap.newKeySet();
+
+	public LocalResource(String description, Policy policy, Priority priority, Initiator initiator, long start, long duration, TimeUnit unit, String... resources) {
+		ResourceAllocation.Builder b = ResourceAllocation.newBuilder().
+				setId(UUID.randomUUID().toString()).setState(REQUESTED).setDescription(description).setPolicy(policy).
+				setPriority(priority).setInitiator(initiator).
+				setSlot(buildRelativeRst(start, duration, unit));
+		for (String r : resources) {
+			b.addResourceIds(r);
+		}
+		this.allocation = b.build();
+	}
+
+	public LocalResource(ResourceAllocation allocation) {
+		this.allocation = allocation;
+	}
+
+	public ResourceAllocation getAllocation() {
+		return this.allocation;
+	}
+
+	public String getId() {
+		return this.allocation.getId();
+	}
+
+	/**
+	 * @return the allocation as currently known by the server, or
+	 * {@code null} if it is not live
+	 */
+	public ResourceAllocation current() {
+		return LocalAllocationService.getInstance().get(getId());
+	}
+
+	public boolean submit() {
+		return LocalAllocationService.getInstance().submit(this.allocation, this);
+	}
+
+	/**
+	 * Listens for updates of the allocation without submitting it, e.g. for
+	 * allocations created by the server.
+	 */
+	public void subscribe() {
+		LocalAllocationService.getInstance().subscribe(getId(), this);
+	}
+
+	public boolean cancel() {
+		return LocalAllocationService.getInstance().cancel(getId());
+	}
+
+	public boolean release() {
+		return LocalAllocationService.getInstance().release(getId());
+	}
+
+	@Override
+	public void updated(ResourceAllocation update) {
+		this.seen.add(update.getState());
+		this.states.add(update.getState());
+	}
+
+	public boolean hasState(State state) {
+		return this.seen.contains(state);
+	}
+
+	public void await(long timeout, TimeUnit unit, State state) throws InterruptedException, TimeoutException {
+		State s;
+		while ((s = this.states.poll(timeout, unit)) != null) {
+			if (s.equals(state)) {
+				return;
+			}
+		}
+		throw new TimeoutException("state " + state + " not reached by " + getId());
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.Histogram;
+import de.citec.csra.allocation.srv.Metrics;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class MetricsTest {
+
+	@Test
+	public void testRender() {
+		Metrics metrics = Metrics.getInstance();
+		metrics.counter("render_test_total").addAndGet(3);
+		metrics.gauge("render_test_gauge", () -> 7);
+		Histogram h = metrics.histogram("render_test_us");
+		for (long v = 1; v <= 100; v++) {
+			h.record(v);
+		}
+		String text = metrics.render();
+		assertTrue(text.contains("# TYPE allocation_render_test_total counter\nallocation_render_test_total 3\n"));
+		assertTrue(text.contains("# TYPE allocation_render_test_gauge gauge\nallocation_render_test_gauge 7\n"));
+		assertTrue(text.contains("# TYPE allocation_render_test_us summary\n"
+				+ "allocation_render_test_us{quantile=\"0.5\"} 51\n"
+				+ "allocation_render_test_us{quantile=\"0.9\"} 91\n"
+				+ "allocation_render_test_us{quantile=\"0.99\"} 99\n"
+				+ "allocation_render_test_us{quantile=\"0.999\"} 100\n"
+				+ "allocation_render_test_us_max 100\n"
+				+ "allocation_render_test_us_sum 5050\n"
+				+ "allocation_render_test_us_count 100\n"));
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.LocalAllocationService;
+import de.citec.csra.allocation.srv.SlotProbe;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class ProbeTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testProbe() throws InterruptedException, TimeoutException {
+		LocalResource high = new LocalResource("Blocking", MAXIMUM, HIGH, SYSTEM, 0, 1000, MILLISECONDS, "probe-resource");
+		LocalResource blocked = new LocalResource("Probe", MAXIMUM, NORMAL, SYSTEM, 200, 500, MILLISECONDS, "probe-resource");
+		LocalResource free = new LocalResource("Probe", MAXIMUM, NORMAL, SYSTEM, 200, 500, MILLISECONDS, "probe-free");
+		assertTrue(high.submit());
+		high.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		SlotProbe probe = LocalAllocationService.getInstance().probe(blocked.getAllocation());
+		assertFalse(probe.isAvailable());
+		assertEquals(high.getId(), probe.getBlockers().get(0).getId());
+		probe = LocalAllocationService.getInstance().probe(free.getAllocation());
+		assertTrue(probe.isAvailable());
+		assertEquals(free.getAllocation().getSlot(), probe.getSlot());
+		assertNull(blocked.current());
+		assertNull(free.current());
+		high.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.QueryServer;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.Factory;
+import rsb.RSBException;
+import rsb.patterns.RemoteServer;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class QueryServerTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	private static Set<String> ids(byte[] encoded) throws IOException {
+		Set<String> ids = new HashSet<>();
+		List<ResourceAllocation> allocations = QueryServer.decode(encoded);
+		for (ResourceAllocation a : allocations) {
+			ids.add(a.getId());
+		}
+		return ids;
+	}
+
+	@Test
+	public void testQueries() throws InterruptedException, TimeoutException, RSBException, ExecutionException, IOException {
+		LocalResource one = new LocalResource("Query", MAXIMUM, NORMAL, SYSTEM, 500, 500, MILLISECONDS, "query-resource-one");
+		LocalResource two = new LocalResource("Query", MAXIMUM, NORMAL, SYSTEM, 2000, 500, MILLISECONDS, "query-resource-two");
+		assertTrue(one.submit());
+		assertTrue(two.submit());
+		one.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		two.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+
+		RemoteServer query = Factory.getInstance().createRemoteServer(QueryServer.getScope());
+		query.activate();
+		try {
+			ResourceAllocation found = query.call("get", one.getId(), 5);
+			assertEquals(one.getId(), found.getId());
+
+			Set<String> prefix = ids(query.call("prefix", "query-resource-", 5));
+			assertEquals(2, prefix.size());
+			assertTrue(prefix.contains(one.getId()));
+			assertTrue(prefix.contains(two.getId()));
+
+			Set<String> state = ids(query.call("state", "scheduled", 5));
+			assertTrue(state.contains(one.getId()));
+			assertTrue(state.contains(two.getId()));
+
+			Set<String> window = ids(query.call("window", one.current().getSlot(), 5));
+			assertTrue(window.contains(one.getId()));
+			assertFalse(window.contains(two.getId()));
+		} finally {
+			query.deactivate();
+		}
+
+		assertTrue(one.cancel());
+		assertTrue(two.cancel());
+		one.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		two.await(TIMEOUT, MILLISECONDS, CANCELLED);
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.LocalAllocationService;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class RecurrenceTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testRecurring() throws InterruptedException, TimeoutException {
+		LocalResource first = new LocalResource("Recurring [every=300] [count=3]", MAXIMUM, NORMAL, SYSTEM, 100, 100, MILLISECONDS, "recurring-resource");
+		LocalResource last = new LocalResource(ResourceAllocation.newBuilder(first.getAllocation()).setId(first.getId() + "/2").build());
+		last.subscribe();
+		assertTrue(first.submit());
+		first.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertNotNull(LocalAllocationService.getInstance().get(first.getId() + "/1"));
+		assertNull(last.current());
+		first.await(TIMEOUT, MILLISECONDS, RELEASED);
+		last.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		last.await(TIMEOUT, MILLISECONDS, ALLOCATED);
+		last.await(TIMEOUT, MILLISECONDS, RELEASED);
+		assertNull(LocalAllocationService.getInstance().get(first.getId() + "/3"));
+	}
+
+	@Test
+	public void testSeries() throws InterruptedException, TimeoutException {
+		LocalResource series = new LocalResource("Series [every=300] [count=2]", MAXIMUM, NORMAL, SYSTEM, 100, 100, MILLISECONDS, "series-resource");
+		assertTrue(series.submit());
+		ResourceAllocation occurrence = LocalAllocationService.getInstance().get(series.getId() + "/1");
+		assertNotNull(occurrence);
+		assertTrue(occurrence.getDescription().contains("[series=" + series.getId() + "]"));
+		series.await(TIMEOUT, MILLISECONDS, RELEASED);
+		series.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import static de.citec.csra.rst.util.IntervalUtils.buildRelativeRst;
+import java.util.UUID;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class RegrowthTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testRegrowth() throws InterruptedException, TimeoutException {
+		LocalResource low = new LocalResource("Shortened", MAXIMUM, LOW, SYSTEM, 300, 1000, MILLISECONDS, "regrow-resource");
+		LocalResource high = new LocalResource("Preempting", MAXIMUM, HIGH, SYSTEM, 500, 400, MILLISECONDS, "regrow-resource");
+		assertTrue(low.submit());
+		low.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertTrue(high.submit());
+		high.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertNotEquals(low.getAllocation().getSlot(), low.current().getSlot());
+		assertTrue(high.cancel());
+		high.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		assertEquals(low.getAllocation().getSlot(), low.current().getSlot());
+		low.await(TIMEOUT, MILLISECONDS, ALLOCATED);
+		low.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testRegrowthFirst() throws InterruptedException, TimeoutException {
+		String token = "#" + UUID.randomUUID().toString();
+		LocalResource low = new LocalResource("Shortened", FIRST, LOW, SYSTEM, 1000, 2000, MILLISECONDS, "regrow-first-resource");
+		LocalResource before = new LocalResource(build("before" + token, 1000, 600));
+		LocalResource between = new LocalResource(build("between" + token, 1200, 200));
+		LocalResource after = new LocalResource(build("after", 2400, 200));
+		assertTrue(low.submit());
+		low.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertTrue(before.submit());
+		assertTrue(between.submit());
+		assertTrue(after.submit());
+		assertTrue(low.current().getSlot().getEnd().getTime() <= after.current().getSlot().getBegin().getTime());
+
+		assertTrue(before.cancel());
+		assertTrue(after.cancel());
+		assertEquals(low.getAllocation().getSlot().getEnd(), low.current().getSlot().getEnd());
+		assertEquals(between.current().getSlot().getEnd(), low.current().getSlot().getBegin());
+		assertTrue(between.cancel());
+		assertTrue(low.cancel());
+	}
+
+	@Test
+	public void testRestore() throws InterruptedException, TimeoutException {
+		ResourceAllocation a = new LocalResource("Moved", PRESERVE, LOW, SYSTEM, 400, 200, MILLISECONDS, "regrow-moved-resource").getAllocation();
+		Interval window = Interval.newBuilder().setBegin(a.getSlot().getBegin()).
+				setEnd(Timestamp.newBuilder().setTime(a.getSlot().getBegin().getTime() + 1000000)).build();
+		LocalResource low = new LocalResource(ResourceAllocation.newBuilder(a).setConstraints(window).build());
+		LocalResource high = new LocalResource("Preempting", MAXIMUM, HIGH, SYSTEM, 300, 500, MILLISECONDS, "regrow-moved-resource");
+		assertTrue(low.submit());
+		low.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertTrue(high.submit());
+		high.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		Interval moved = low.current().getSlot();
+		assertTrue(moved.getBegin().getTime() >= high.current().getSlot().getEnd().getTime());
+		assertTrue(high.cancel());
+		high.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		assertEquals(a.getSlot(), low.current().getSlot());
+		assertTrue(low.cancel());
+	}
+
+	private static ResourceAllocation build(String id, long start, long duration) {
+		return ResourceAllocation.newBuilder().setId(id).setState(REQUESTED).setDescription("Preempting").
+				setPolicy(MAXIMUM).setPriority(HIGH).setInitiator(SYSTEM).
+				setSlot(buildRelativeRst(start, duration, MILLISECONDS)).
+				addResourceIds("regrow-first-resource").build();
+	}
+}
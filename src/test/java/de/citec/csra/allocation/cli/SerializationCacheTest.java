@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.srv.LocalAllocationService;
+import de.citec.csra.allocation.srv.Metrics;
+import de.citec.csra.allocation.srv.SerializationCache;
+import static de.citec.csra.rst.util.IntervalUtils.buildRelativeRst;
+import java.nio.ByteBuffer;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import rsb.converter.ConversionException;
+import rsb.converter.WireContents;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class SerializationCacheTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testReuse() throws InterruptedException, TimeoutException, ConversionException {
+		LocalResource res = new LocalResource("Cached", MAXIMUM, NORMAL, SYSTEM, 1000, 500, MILLISECONDS, "cache-resource");
+		AtomicLong hits = Metrics.getInstance().counter("serialization_cache_hits");
+		assertTrue(res.submit());
+		res.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+
+		ResourceAllocation scheduled = res.current();
+		WireContents<ByteBuffer> first = SerializationCache.getInstance().serialize(ResourceAllocation.class, scheduled);
+		long before = hits.get();
+		WireContents<ByteBuffer> second = SerializationCache.getInstance().serialize(ResourceAllocation.class, scheduled);
+		assertEquals(before + 1, hits.get());
+		assertEquals(first.getSerialization(), second.getSerialization());
+
+		ResourceAllocation modified = ResourceAllocation.newBuilder(scheduled).setSlot(buildRelativeRst(1200, 300, MILLISECONDS)).build();
+		assertTrue(LocalAllocationService.getInstance().modify(modified));
+		before = hits.get();
+		SerializationCache.getInstance().serialize(ResourceAllocation.class, scheduled);
+		assertEquals(before, hits.get());
+
+		ResourceAllocation current = res.current();
+		SerializationCache.getInstance().serialize(ResourceAllocation.class, current);
+		assertTrue(res.cancel());
+		res.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		before = hits.get();
+		SerializationCache.getInstance().serialize(ResourceAllocation.class, current);
+		assertEquals(before, hits.get());
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class SharedAllocationTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testShared() throws InterruptedException, TimeoutException {
+		LocalResource first = new LocalResource("Reader [shared]", MAXIMUM, NORMAL, SYSTEM, 100, 500, MILLISECONDS, "rw-resource");
+		LocalResource second = new LocalResource("Reader [shared]", MAXIMUM, NORMAL, SYSTEM, 100, 500, MILLISECONDS, "rw-resource");
+		LocalResource writer = new LocalResource("Writer [wait]", MAXIMUM, NORMAL, SYSTEM, 100, 500, MILLISECONDS, "rw-resource");
+		LocalResource late = new LocalResource("LateReader [shared]", MAXIMUM, NORMAL, SYSTEM, 100, 500, MILLISECONDS, "rw-resource");
+		assertTrue(first.submit());
+		assertTrue(second.submit());
+		first.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		second.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertEquals(first.getAllocation().getSlot(), first.current().getSlot());
+		assertEquals(second.getAllocation().getSlot(), second.current().getSlot());
+		assertFalse(writer.submit());
+		assertFalse(late.submit());
+		late.await(TIMEOUT, MILLISECONDS, REJECTED);
+		assertTrue(writer.cancel());
+		writer.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		first.await(TIMEOUT, MILLISECONDS, RELEASED);
+		second.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testRefitReader() throws InterruptedException, TimeoutException {
+		LocalResource blocker = new LocalResource("Blocker", MAXIMUM, HIGH, SYSTEM, 0, 1500, MILLISECONDS, "rw-refit/a");
+		LocalResource reader = new LocalResource("Reader [shared]", MAXIMUM, NORMAL, SYSTEM, 200, 1000, MILLISECONDS, "rw-refit/b");
+		LocalResource writer = new LocalResource("Writer [wait]", MAXIMUM, NORMAL, SYSTEM, 200, 400, MILLISECONDS, "rw-refit");
+		LocalResource cut = new LocalResource("Cut", MAXIMUM, HIGH, SYSTEM, 1000, 200, MILLISECONDS, "rw-refit/b");
+		assertTrue(blocker.submit());
+		assertTrue(reader.submit());
+		reader.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertFalse(writer.submit());
+		assertTrue(cut.submit());
+		cut.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertEquals(reader.getAllocation().getSlot().getBegin(), reader.current().getSlot().getBegin());
+		assertTrue(reader.current().getSlot().getEnd().getTime() <= cut.current().getSlot().getBegin().getTime());
+		assertTrue(writer.cancel());
+		assertTrue(cut.cancel());
+		assertTrue(reader.cancel());
+		assertTrue(blocker.cancel());
+	}
+}
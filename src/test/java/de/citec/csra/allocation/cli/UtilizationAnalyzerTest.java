@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import de.citec.csra.allocation.replay.Recording;
+import de.citec.csra.allocation.replay.UtilizationAnalyzer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Test;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class UtilizationAnalyzerTest {
+
+	private static final String CLIENT = "client";
+	private static final String SERVER = "server";
+
+	@Test
+	public void testUnknownServer() throws IOException {
+		File file = File.createTempFile("allocation-", ".rec");
+		file.deleteOnExit();
+		try (Recording.Writer writer = new Recording.Writer(file, null)) {
+			write(writer, 0, CLIENT, build("a", REQUESTED, 1000000, 3000000));
+			write(writer, 10, SERVER, build("a", SCHEDULED, 1000000, 3000000));
+			write(writer, 1000000, SERVER, build("a", ALLOCATED, 1000000, 3000000));
+			write(writer, 3000000, SERVER, build("a", RELEASED, 1000000, 3000000));
+		}
+		UtilizationAnalyzer analyzer = new UtilizationAnalyzer();
+		analyzer.analyze(file);
+		String[] line = line(analyzer, "analyzer-resource");
+		assertNotNull(line);
+		assertEquals("1", line[1]);
+		assertEquals("2.0", line[2]);
+	}
+
+	private static void write(Recording.Writer writer, long time, String sender, ResourceAllocation allocation) throws IOException {
+		writer.write(time, sender, allocation.toByteArray());
+	}
+
+	private static String[] line(UtilizationAnalyzer analyzer, String resource) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		analyzer.report(new PrintStream(bytes, true));
+		for (String line : bytes.toString().split("\n")) {
+			String[] columns = line.trim().split("\\s+");
+			if (columns[0].equals(resource)) {
+				return columns;
+			}
+		}
+		return null;
+	}
+
+	private static ResourceAllocation build(String id, State state, long begin, long end) {
+		return ResourceAllocation.newBuilder().setId(id).setState(state).setDescription("Recorded").
+				setPolicy(MAXIMUM).setPriority(NORMAL).setInitiator(SYSTEM).
+				setSlot(Interval.newBuilder().setBegin(Timestamp.newBuilder().setTime(begin)).setEnd(Timestamp.newBuilder().setTime(end)).build()).
+				addResourceIds("analyzer-resource").build();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.cli;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rsb.RSBException;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.*;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class WaitListTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@BeforeClass
+	public static void initServer() throws InterruptedException, RSBException {
+		TestSetup.initServer();
+	}
+
+	@Test
+	public void testWaiting() throws InterruptedException, TimeoutException {
+		LocalResource high = new LocalResource("Blocking", MAXIMUM, HIGH, SYSTEM, 200, 1000, MILLISECONDS, "wait-resource");
+		LocalResource waiting = new LocalResource("Waiting [wait]", MAXIMUM, LOW, SYSTEM, 200, 500, MILLISECONDS, "wait-resource");
+		assertTrue(high.submit());
+		high.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertFalse(waiting.submit());
+		assertTrue(high.cancel());
+		high.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		waiting.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		waiting.await(TIMEOUT, MILLISECONDS, ALLOCATED);
+		waiting.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testWaitingCancel() throws InterruptedException, TimeoutException {
+		LocalResource high = new LocalResource("Blocking", MAXIMUM, HIGH, SYSTEM, 0, 1000, MILLISECONDS, "wait-cancel-resource");
+		LocalResource waiting = new LocalResource("Waiting [wait]", MAXIMUM, LOW, SYSTEM, 0, 500, MILLISECONDS, "wait-cancel-resource");
+		assertTrue(high.submit());
+		high.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertFalse(waiting.submit());
+		assertTrue(waiting.cancel());
+		waiting.await(TIMEOUT, MILLISECONDS, CANCELLED);
+		high.await(TIMEOUT, MILLISECONDS, RELEASED);
+	}
+
+	@Test
+	public void testWaitingExpired() throws InterruptedException, TimeoutException {
+		LocalResource high = new LocalResource("Blocking", MAXIMUM, HIGH, SYSTEM, 0, 1500, MILLISECONDS, "wait-expire-resource");
+		LocalResource waiting = new LocalResource("Waiting [wait]", MAXIMUM, LOW, SYSTEM, 100, 300, MILLISECONDS, "wait-expire-resource");
+		assertTrue(high.submit());
+		high.await(TIMEOUT, MILLISECONDS, SCHEDULED);
+		assertFalse(waiting.submit());
+		waiting.await(TIMEOUT, MILLISECONDS, RELEASED);
+		assertFalse(waiting.hasState(SCHEDULED));
+		assertTrue(high.cancel());
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.MAXIMUM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.NORMAL;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class AllocationIndexTest {
+
+	private Map<String, ResourceAllocation> allocations;
+	private AllocationIndex index;
+	private ResourceAllocation arm;
+	private ResourceAllocation head;
+	private ResourceAllocation other;
+
+	private static ResourceAllocation allocation(String id, State state, String description, long begin, long end, String resource) {
+		return ResourceAllocation.newBuilder().setId(id).setState(state).setDescription(description).
+				setPolicy(MAXIMUM).setPriority(NORMAL).setInitiator(SYSTEM).
+				setSlot(Interval.newBuilder().
+						setBegin(Timestamp.newBuilder().setTime(begin).build()).
+						setEnd(Timestamp.newBuilder().setTime(end).build()).build()).
+				addResourceIds(resource).build();
+	}
+
+	private static Set<String> ids(List<ResourceAllocation> allocations) {
+		Set<String> ids = new HashSet<>();
+		for (ResourceAllocation a : allocations) {
+			ids.add(a.getId());
+		}
+		return ids;
+	}
+
+	private static Set<String> ids(String... ids) {
+		return new HashSet<>(Arrays.asList(ids));
+	}
+
+	private void store(ResourceAllocation previous, ResourceAllocation current) {
+		if (current != null) {
+			this.allocations.put(current.getId(), current);
+		} else {
+			this.allocations.remove(previous.getId());
+		}
+		this.index.update(previous, current);
+	}
+
+	@Before
+	public void fill() {
+		this.allocations = new ConcurrentHashMap<>();
+		this.index = new AllocationIndex(this.allocations);
+		this.arm = allocation("arm#token", SCHEDULED, "Arm", 100, 200, "/robot/arm");
+		this.head = allocation("head", ALLOCATED, "Head [shared]", 0, 10000, "/robot/head");
+		this.other = allocation("other#token", SCHEDULED, "Other", 300, 400, "/other");
+		store(null, this.arm);
+		store(null, this.head);
+		store(null, this.other);
+	}
+
+	@Test
+	public void testGet() {
+		assertEquals(this.arm, this.index.get("arm#token"));
+		assertNull(this.index.get("missing"));
+		assertEquals(ids("arm#token", "other#token"), this.index.idsByToken("token"));
+		assertTrue(this.index.isShared("head"));
+		assertFalse(this.index.isShared("arm#token"));
+	}
+
+	@Test
+	public void testPrefix() {
+		assertEquals(ids("arm#token", "head"), ids(this.index.byPrefix("/robot/")));
+		assertEquals(ids("arm#token"), ids(this.index.byPrefix("/robot/arm")));
+		assertEquals(ids(), ids(this.index.byPrefix("/robot/leg")));
+		assertEquals(ids("/robot/arm", "/robot/head"), this.index.resourcesByPrefix("/robot/"));
+	}
+
+	@Test
+	public void testState() {
+		assertEquals(ids("arm#token", "other#token"), ids(this.index.byState(SCHEDULED)));
+		assertEquals(ids("head"), ids(this.index.byState(ALLOCATED)));
+		assertEquals(2, this.index.count(SCHEDULED));
+		store(this.arm, allocation("arm#token", ALLOCATED, "Arm", 100, 200, "/robot/arm"));
+		assertEquals(ids("other#token"), ids(this.index.byState(SCHEDULED)));
+		assertEquals(ids("arm#token", "head"), ids(this.index.byState(ALLOCATED)));
+	}
+
+	@Test
+	public void testWindow() {
+		assertEquals(ids("arm#token", "head"), ids(this.index.byWindow(150, 160)));
+		assertEquals(ids("arm#token", "head", "other#token"), ids(this.index.byWindow(200, 300)));
+		assertEquals(ids("head"), ids(this.index.byWindow(401, 500)));
+		assertEquals(ids(), ids(this.index.byWindow(10001, 20000)));
+
+		store(this.arm, allocation("arm#token", SCHEDULED, "Arm", 500, 600, "/robot/arm"));
+		assertEquals(ids("head"), ids(this.index.byWindow(150, 160)));
+		store(this.head, null);
+		assertEquals(ids("arm#token"), ids(this.index.byWindow(401, 500)));
+		assertEquals(ids(), ids(this.index.byWindow(150, 160)));
+		assertFalse(this.index.isShared("head"));
+	}
+}
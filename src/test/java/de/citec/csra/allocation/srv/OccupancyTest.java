@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.*;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class OccupancyTest {
+
+	private static final long BASE = 10000000000L;
+	private static final long SECOND = 1000000;
+	private static final long MINUTE = 60 * SECOND;
+	private static final double DELTA = 1e-9;
+
+	private static ResourceAllocation allocation(String id, State state, String resource) {
+		return ResourceAllocation.newBuilder().setId(id).setState(state).addResourceIds(resource).build();
+	}
+
+	@Test
+	public void testBuckets() {
+		AtomicLong clock = new AtomicLong(BASE + 5 * SECOND);
+		Occupancy.Stats stats = new Occupancy.Stats(clock::get);
+		stats.transition(null, ALLOCATED, clock.get());
+		clock.addAndGet(20 * SECOND);
+		assertEquals(20.0 / 55, stats.getRatio(MINUTE), DELTA);
+		assertEquals(20.0 / 295, stats.getRatio(5 * MINUTE), DELTA);
+		assertEquals(20.0 / 895, stats.getRatio(15 * MINUTE), DELTA);
+		stats.transition(ALLOCATED, RELEASED, clock.get());
+		clock.addAndGet(MINUTE);
+		assertEquals(0, stats.getRatio(MINUTE), DELTA);
+		assertEquals(20.0 / 295, stats.getRatio(5 * MINUTE), DELTA);
+	}
+
+	@Test
+	public void testRatio() {
+		AtomicLong clock = new AtomicLong(BASE);
+		Occupancy.Stats stats = new Occupancy.Stats(clock::get);
+		stats.transition(null, SCHEDULED, clock.get());
+		assertEquals(1, stats.getQueued());
+		clock.addAndGet(MINUTE);
+		assertEquals(0, stats.getRatio(MINUTE), DELTA);
+
+		stats.transition(SCHEDULED, ALLOCATED, clock.get());
+		assertEquals(0, stats.getQueued());
+		assertEquals(1, stats.getActive());
+		clock.addAndGet(15 * MINUTE + 5 * SECOND);
+		assertEquals(1, stats.getRatio(MINUTE), DELTA);
+		assertEquals(1, stats.getRatio(5 * MINUTE), DELTA);
+		assertEquals(1, stats.getRatio(15 * MINUTE), DELTA);
+
+		stats.transition(null, ALLOCATED, clock.get());
+		clock.addAndGet(10 * SECOND);
+		assertEquals(65.0 / 55, stats.getRatio(MINUTE), DELTA);
+
+		stats.transition(ALLOCATED, RELEASED, clock.get());
+		stats.transition(ALLOCATED, RELEASED, clock.get());
+		assertEquals(0, stats.getActive());
+		clock.addAndGet(MINUTE);
+		assertEquals(0, stats.getRatio(MINUTE), DELTA);
+		assertEquals(245.0 / 295, stats.getRatio(5 * MINUTE), DELTA);
+		assertEquals(845.0 / 895, stats.getRatio(15 * MINUTE), DELTA);
+
+		clock.addAndGet(20 * MINUTE);
+		assertEquals(0, stats.getRatio(15 * MINUTE), DELTA);
+	}
+
+	@Test
+	public void testEviction() {
+		AtomicLong clock = new AtomicLong(BASE);
+		Occupancy occupancy = new Occupancy(clock::get);
+		occupancy.update(null, allocation("rejected", REJECTED, "/robot/arm"));
+		ResourceAllocation held = allocation("held", ALLOCATED, "/robot/arm");
+		occupancy.update(null, held);
+		assertEquals(1, occupancy.get("/robot/").getRejected());
+		assertEquals(1, occupancy.get("/robot/arm").getActive());
+
+		clock.addAndGet(MINUTE);
+		ResourceAllocation released = allocation("held", RELEASED, "/robot/arm");
+		occupancy.update(held, released);
+		occupancy.update(released, null);
+		assertEquals(0, occupancy.get("/robot/").getActive());
+
+		clock.addAndGet(15 * MINUTE - 10 * SECOND);
+		ResourceAllocation other = allocation("other", SCHEDULED, "/other");
+		occupancy.update(null, other);
+		assertNotNull(occupancy.get("/robot/"));
+
+		clock.addAndGet(20 * SECOND);
+		occupancy.update(other, allocation("other", ALLOCATED, "/other"));
+		assertNull(occupancy.get("/robot/"));
+		assertNull(occupancy.get("/robot/arm"));
+		assertNotNull(occupancy.get("/other"));
+
+		occupancy.update(null, allocation("again", REJECTED, "/robot/arm"));
+		assertEquals(1, occupancy.get("/robot/").getRejected());
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 Bielefeld University, Patrick Holthaus
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.citec.csra.allocation.srv;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import rsb.Scope;
+import rst.communicationpatterns.ResourceAllocationType.ResourceAllocation;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Initiator.SYSTEM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Policy.MAXIMUM;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.Priority.NORMAL;
+import static rst.communicationpatterns.ResourceAllocationType.ResourceAllocation.State.SCHEDULED;
+import rst.timing.IntervalType.Interval;
+import rst.timing.TimestampType.Timestamp;
+
+/**
+ *
+ * @author Patrick Holthaus
+ * (<a href=mailto:patrick.holthaus@uni-bielefeld.de>patrick.holthaus@uni-bielefeld.de</a>)
+ */
+public class ResourceScopesTest {
+
+	private static final int CAPACITY = 1024;
+
+	private static ResourceAllocation allocation(String id, String... resources) {
+		return ResourceAllocation.newBuilder().setId(id).setState(SCHEDULED).setDescription(id).
+				setPolicy(MAXIMUM).setPriority(NORMAL).setInitiator(SYSTEM).
+				setSlot(Interval.newBuilder().
+						setBegin(Timestamp.newBuilder().setTime(100).build()).
+						setEnd(Timestamp.newBuilder().setTime(200).build()).build()).
+				addAllResourceIds(Arrays.asList(resources)).build();
+	}
+
+	private static Set<Scope> scopes(String... resources) {
+		Set<Scope> scopes = new LinkedHashSet<>();
+		for (String r : resources) {
+			scopes.add(new Scope(ResourceScopes.getScope(r)));
+		}
+		return scopes;
+	}
+
+	private static Scope scope(String resource) {
+		return ResourceScopes.getScopes(allocation("lru", resource), new AllocationIndex(new ConcurrentHashMap<>())).iterator().next();
+	}
+
+	@Test
+	public void testScope() {
+		String root = AllocationServer.getScope().replaceAll("/+$", "") + "-res/";
+		assertEquals(root, ResourceScopes.getRoot());
+		assertEquals(root + "robot/arm/", ResourceScopes.getScope("/robot/arm/"));
+		assertEquals(root + "robot/arm/", ResourceScopes.getScope("robot//arm"));
+		assertEquals(root + "robot/a_b_c/", ResourceScopes.getScope("/robot/a b.c/"));
+	}
+
+	@Test
+	public void testDeepest() {
+		Map<String, ResourceAllocation> live = new ConcurrentHashMap<>();
+		AllocationIndex index = new AllocationIndex(live);
+		for (ResourceAllocation a : new ResourceAllocation[]{
+			allocation("left", "/robot/arm/left/"),
+			allocation("right", "/robot/arm/right/"),
+			allocation("head", "/robot/head/")}) {
+			live.put(a.getId(), a);
+			index.update(null, a);
+		}
+		assertEquals(scopes("/robot/arm/left/", "/robot/arm/right/"),
+				ResourceScopes.getScopes(allocation("arm", "/robot/arm/"), index));
+		assertEquals(scopes("/robot/arm/left/", "/robot/arm/right/", "/robot/head/"),
+				ResourceScopes.getScopes(allocation("robot", "/robot/"), index));
+		assertEquals(scopes("/robot/leg/"),
+				ResourceScopes.getScopes(allocation("leg", "/robot/leg/"), index));
+		assertEquals(scopes("/robot/arm/left/", "/robot/head/"),
+				ResourceScopes.getScopes(allocation("both", "/robot/arm/left/", "/robot/head/"), index));
+		assertEquals(scopes("/robot/arm/left/", "/robot/arm/right/"),
+				ResourceScopes.getScopes(allocation("nested", "/robot/arm/", "/robot/arm/left/"), index));
+	}
+
+	@Test
+	public void testEviction() {
+		Scope first = scope("/scope-lru/first/");
+		assertSame(first, scope("/scope-lru/first/"));
+		for (int i = 0; i < CAPACITY - 1; i++) {
+			scope("/scope-lru/" + i + "/");
+		}
+		assertSame(first, scope("/scope-lru/first/"));
+		for (int i = 0; i < CAPACITY; i++) {
+			scope("/scope-lru/other-" + i + "/");
+		}
+		assertNotSame(first, scope("/scope-lru/first/"));
+	}
+}